@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the verification throughput of {@link Ed25519Engine} with the i2p {@link EdDSAEngine}
+ * it replaces. Both engines are constructed once and reused, so only the work of each verify is
+ * measured. Run with {@code -prof gc} to compare the allocation per verify as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Ed25519EngineBenchmark {
+
+  private final byte[] message = new byte[128];
+
+  private Signature engine;
+  private Signature i2p;
+  private byte[] signature;
+
+  @Setup
+  public void setup() throws InvalidKeyException, SignatureException {
+    for (int i = 0; i < message.length; i++) {
+      message[i] = (byte) (i * 37 + 11);
+    }
+
+    RtEd25519.Signer signer = new RtEd25519.Signer(new byte[32]);
+    signer.update(message);
+    signature = signer.sign();
+
+    byte[] publicKey = signer.getPubKey();
+    engine = new Ed25519Engine(Ed25519Engine.decodePublicKey(publicKey));
+    i2p = new EdDSAEngine(RtHashing.newSha512());
+    i2p.initVerify(RtEd25519.decodePublicKey(publicKey));
+  }
+
+  @Benchmark
+  public boolean verifyEngine() throws SignatureException {
+    engine.update(message);
+    return engine.verify(signature);
+  }
+
+  @Benchmark
+  public boolean verifyI2p() throws SignatureException {
+    i2p.update(message);
+    return i2p.verify(signature);
+  }
+}
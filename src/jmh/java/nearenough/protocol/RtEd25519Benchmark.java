@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import java.security.InvalidKeyException;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the throughput of signing and verifying with each {@link RtSignatureProvider}, using
+ * {@link RtEd25519.Signer} and {@link RtEd25519.Verifier} as clients and servers do. The message
+ * is the size of a typical signed response (SREP) with its context string.
+ * <p>
+ * {@code verifyNewVerifier} constructs a verifier for every signature, as {@code
+ * RoughtimeClient} once did, to show what reusing one saves. The {@code "jdk"} provider needs
+ * Java 15 or later; on older releases run with {@code -p provider=nearenough,i2p}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RtEd25519Benchmark {
+
+  @Param({"nearenough", "i2p", "jdk"})
+  public String provider;
+
+  private final byte[] seed = new byte[32];
+  private final byte[] message = new byte[128];
+
+  private RtSignatureProvider selected;
+  private RtEd25519.Signer signer;
+  private RtEd25519.Verifier verifier;
+  private byte[] publicKey;
+  private byte[] signature;
+
+  @Setup
+  public void setup() throws InvalidKeyException, SignatureException {
+    for (int i = 0; i < message.length; i++) {
+      message[i] = (byte) (i * 37 + 11);
+    }
+    seed[0] = 1;
+
+    selected = RtEd25519.selectProvider(provider, RtEd25519.providers());
+    signer = new RtEd25519.Signer(seed, selected);
+    publicKey = signer.getPubKey();
+
+    signer.update(message);
+    signature = signer.sign();
+
+    verifier = new RtEd25519.Verifier(publicKey, selected);
+  }
+
+  @Benchmark
+  public byte[] sign() throws SignatureException {
+    signer.update(message);
+    return signer.sign();
+  }
+
+  @Benchmark
+  public boolean verify() throws SignatureException {
+    verifier.update(message);
+    return verifier.verify(signature);
+  }
+
+  @Benchmark
+  public boolean verifyNewVerifier() throws InvalidKeyException, SignatureException {
+    RtEd25519.Verifier fresh = new RtEd25519.Verifier(publicKey, selected);
+    fresh.update(message);
+    return fresh.verify(signature);
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link BytesUtil}'s little-endian accessors with the shift-based Java 8 code they
+ * replace on Java 9+. Each benchmark reads or writes at every offset of a 64-byte array, so most
+ * accesses are unaligned, much like the fields of a Roughtime message.
+ * <p>
+ * Run on Java 9 or later, where the multi-release classes are on the classpath, to measure the
+ * {@code VarHandle} implementation; on Java 8 both variants run the shift-based code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BytesUtilBenchmark {
+
+  private static final int LENGTH = 64;
+
+  private final byte[] bytes = new byte[LENGTH];
+  private final ByteBuffer direct = ByteBuffer.allocateDirect(LENGTH);
+
+  public BytesUtilBenchmark() {
+    for (int i = 0; i < LENGTH; i++) {
+      bytes[i] = (byte) (i * 37 + 11);
+    }
+    direct.put(bytes).clear();
+  }
+
+  @Benchmark
+  public long getLongLeShifts() {
+    long sum = 0;
+    for (int i = 0; i <= LENGTH - 8; i++) {
+      sum += shiftsGetLongLE(bytes, i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long getLongLe() {
+    long sum = 0;
+    for (int i = 0; i <= LENGTH - 8; i++) {
+      sum += BytesUtil.getLongLE(bytes, i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long getLongLeDirectBuffer() {
+    long sum = 0;
+    for (int i = 0; i <= LENGTH - 8; i++) {
+      sum += BytesUtil.getLongLE(direct, i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int getIntLeShifts() {
+    int sum = 0;
+    for (int i = 0; i <= LENGTH - 4; i++) {
+      sum += shiftsGetIntLE(bytes, i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int getIntLe() {
+    int sum = 0;
+    for (int i = 0; i <= LENGTH - 4; i++) {
+      sum += BytesUtil.getIntLE(bytes, i);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public byte[] setLongLeShifts() {
+    for (int i = 0; i <= LENGTH - 8; i++) {
+      shiftsSetLongLE(bytes, i, i);
+    }
+    return bytes;
+  }
+
+  @Benchmark
+  public byte[] setLongLe() {
+    for (int i = 0; i <= LENGTH - 8; i++) {
+      BytesUtil.setLongLE(bytes, i, i);
+    }
+    return bytes;
+  }
+
+  // The Java 8 implementations, copied so that both can be measured in one JVM
+
+  private static int shiftsGetIntLE(byte[] memory, int index) {
+    return memory[index] & 0xff |
+        (memory[index + 1] & 0xff) << 8 |
+        (memory[index + 2] & 0xff) << 16 |
+        (memory[index + 3] & 0xff) << 24;
+  }
+
+  private static long shiftsGetLongLE(byte[] memory, int index) {
+    return memory[index] & 0xffL |
+        (memory[index + 1] & 0xffL) << 8 |
+        (memory[index + 2] & 0xffL) << 16 |
+        (memory[index + 3] & 0xffL) << 24 |
+        (memory[index + 4] & 0xffL) << 32 |
+        (memory[index + 5] & 0xffL) << 40 |
+        (memory[index + 6] & 0xffL) << 48 |
+        (memory[index + 7] & 0xffL) << 56;
+  }
+
+  private static void shiftsSetLongLE(byte[] memory, int index, long value) {
+    memory[index] = (byte) value;
+    memory[index + 1] = (byte) (value >>> 8);
+    memory[index + 2] = (byte) (value >>> 16);
+    memory[index + 3] = (byte) (value >>> 24);
+    memory[index + 4] = (byte) (value >>> 32);
+    memory[index + 5] = (byte) (value >>> 40);
+    memory[index + 6] = (byte) (value >>> 48);
+    memory[index + 7] = (byte) (value >>> 56);
+  }
+}
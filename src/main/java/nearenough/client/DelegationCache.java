@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.client;
+
+import static nearenough.util.Preconditions.checkArgument;
+import static nearenough.util.Preconditions.checkNotNull;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers certificates (CERT) whose delegation signature has already been verified, so that
+ * the long-term key's signature is checked once per delegation rather than once per response.
+ * <p>
+ * Entries are keyed by the server's long-term public key together with the exact CERT bytes, so
+ * a certificate verified for one server is never trusted for another. An entry holds the
+ * delegated key and its MINT and MAXT bounds, and is dropped once the local clock passes MAXT.
+ * Expiry only limits how long entries are retained; every response's midpoint is still checked
+ * against the cached bounds. The least recently used entry is evicted when the cache is full.
+ * <p>
+ * Instances are thread-safe and may be shared by any number of {@link RoughtimeClient}s.
+ */
+public final class DelegationCache {
+
+  /**
+   * Default maximum number of entries.
+   */
+  public static final int DEFAULT_MAX_ENTRIES = 64;
+
+  private static final DelegationCache SHARED = new DelegationCache(DEFAULT_MAX_ENTRIES);
+
+  /**
+   * @return A process-wide cache, for {@link RoughtimeClient}s that opt into sharing verified
+   * delegations with {@link RoughtimeClient#delegationCache(DelegationCache)}
+   */
+  public static DelegationCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * A verified delegation: the delegated public key and the MINT..MAXT window it is valid for.
+   */
+  /*package*/ static final class Delegation {
+
+    private final byte[] publicKey;
+    private final long minT;
+    private final long maxT;
+
+    /*package*/ Delegation(byte[] publicKey, long minT, long maxT) {
+      this.publicKey = publicKey.clone();
+      this.minT = minT;
+      this.maxT = maxT;
+    }
+
+    /*package*/ byte[] publicKey() {
+      return publicKey.clone();
+    }
+
+    /*package*/ long minT() {
+      return minT;
+    }
+
+    /*package*/ long maxT() {
+      return maxT;
+    }
+  }
+
+  private final Map<ByteBuffer, Delegation> entries;
+  private final LongSupplier clockMicros;
+
+  /**
+   * Creates a cache of at most {@code maxEntries} delegations that expire according to the
+   * system clock.
+   */
+  public DelegationCache(int maxEntries) {
+    this(maxEntries, () -> TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+  }
+
+  /**
+   * Creates a cache of at most {@code maxEntries} delegations that expire according to {@code
+   * clockMicros}, which returns the current time in microseconds since the Unix epoch like the
+   * MINT and MAXT values of a delegation.
+   */
+  public DelegationCache(int maxEntries, LongSupplier clockMicros) {
+    checkArgument(maxEntries > 0, "maxEntries must be positive");
+    this.clockMicros = checkNotNull(clockMicros, "clockMicros");
+    this.entries = new LinkedHashMap<ByteBuffer, Delegation>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Delegation> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * @return The number of delegations currently cached, including any that have expired but not
+   * yet been looked up
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Forget every cached delegation.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return The delegation previously verified for {@code cert} under {@code longTermKey}, or
+   * {@code null} if there is none or it has expired
+   */
+  /*package*/ synchronized Delegation get(byte[] longTermKey, byte[] cert) {
+    ByteBuffer key = key(longTermKey, cert);
+    Delegation delegation = entries.get(key);
+
+    if ((delegation != null) && isExpired(delegation)) {
+      entries.remove(key);
+      return null;
+    }
+    return delegation;
+  }
+
+  /**
+   * Remember that the delegation signature of {@code cert} verified under {@code longTermKey}.
+   */
+  /*package*/ synchronized void put(byte[] longTermKey, byte[] cert, Delegation delegation) {
+    if (!isExpired(delegation)) {
+      entries.put(key(longTermKey, cert), delegation);
+    }
+  }
+
+  private boolean isExpired(Delegation delegation) {
+    return Long.compareUnsigned(clockMicros.getAsLong(), delegation.maxT()) > 0;
+  }
+
+  private static ByteBuffer key(byte[] longTermKey, byte[] cert) {
+    byte[] key = new byte[longTermKey.length + cert.length];
+    System.arraycopy(longTermKey, 0, key, 0, longTermKey.length);
+    System.arraycopy(cert, 0, key, longTermKey.length, cert.length);
+    return ByteBuffer.wrap(key);
+  }
+}
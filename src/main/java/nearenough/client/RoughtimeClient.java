@@ -24,6 +24,8 @@ import static nearenough.util.Preconditions.checkArgument;
 import static nearenough.util.Preconditions.checkNotNull;
 import static nearenough.util.Preconditions.checkState;
 
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.SecureRandom;
 import java.security.SignatureException;
@@ -32,12 +34,14 @@ import java.util.Random;
 import nearenough.protocol.RtEd25519;
 import nearenough.protocol.RtHashing;
 import nearenough.protocol.RtMessage;
+import nearenough.protocol.RtRequestTemplate;
+import nearenough.protocol.RtStatus;
 import nearenough.protocol.RtTag;
 import nearenough.protocol.exceptions.InvalidRoughTimeMessage;
 import nearenough.protocol.exceptions.MerkleTreeInvalid;
 import nearenough.protocol.exceptions.MidpointInvalid;
+import nearenough.protocol.exceptions.MissingTagException;
 import nearenough.protocol.exceptions.SignatureInvalid;
-import nearenough.util.BytesUtil;
 
 /**
  * Creates RoughTime client requests and processes server responses.
@@ -83,6 +87,30 @@ import nearenough.util.BytesUtil;
  */
 public final class RoughtimeClient {
 
+  // Every request is identical apart from its nonce
+  private static final RtRequestTemplate REQUEST_TEMPLATE = new RtRequestTemplate();
+
+  // Paths to the nested values read while verifying, walked in place by RtMessage
+  private static final RtTag[] CERT = {RtTag.CERT};
+  private static final RtTag[] CERT_DELE = {RtTag.CERT, RtTag.DELE};
+  private static final RtTag[] CERT_SIG = {RtTag.CERT, RtTag.SIG};
+  private static final RtTag[] CERT_DELE_PUBK = {RtTag.CERT, RtTag.DELE, RtTag.PUBK};
+  private static final RtTag[] CERT_DELE_MINT = {RtTag.CERT, RtTag.DELE, RtTag.MINT};
+  private static final RtTag[] CERT_DELE_MAXT = {RtTag.CERT, RtTag.DELE, RtTag.MAXT};
+  private static final RtTag[] SREP_ROOT = {RtTag.SREP, RtTag.ROOT};
+  private static final RtTag[] SREP_MIDP = {RtTag.SREP, RtTag.MIDP};
+  private static final RtTag[] SREP_RADI = {RtTag.SREP, RtTag.RADI};
+
+  // Failures with fixed messages are stackless and immutable, so one instance of each is shared
+  private static final SignatureInvalid DELE_SIGNATURE_MISMATCH =
+      new SignatureInvalid("signature on DELE does not match");
+  private static final SignatureInvalid SREP_SIGNATURE_MISMATCH =
+      new SignatureInvalid("signature on SREP does not match");
+  private static final MerkleTreeInvalid NONCE_NOT_FOUND =
+      new MerkleTreeInvalid("nonce not found in response Merkle tree");
+  private static final MerkleTreeInvalid MERKLE_ROOT_MISMATCH =
+      new MerkleTreeInvalid("Merkle tree validation failed");
+
   private final byte[] nonce;
   private final byte[] longTermPubKey;
 
@@ -93,6 +121,14 @@ public final class RoughtimeClient {
   private long delegationMaxT;
   private boolean isResponseValid;
   private InvalidRoughTimeMessage invalidResponseCause;
+  private DelegationCache delegationCache =
+      new DelegationCache(DelegationCache.DEFAULT_MAX_ENTRIES);
+
+  // Verifiers reset after each signature, so they are kept for later responses; the delegated
+  // key's verifier is replaced when a response delegates to a different key
+  private RtEd25519.Verifier longTermVerifier;
+  private RtEd25519.Verifier delegatedVerifier;
+  private byte[] delegatedVerifierKey;
 
   /**
    * Creates a new instance using {@link SecureRandom} as the random number generator for generating
@@ -137,6 +173,19 @@ public final class RoughtimeClient {
     this.longTermPubKey = Arrays.copyOf(publicKey, publicKey.length);
   }
 
+  /**
+   * Use {@code cache} to remember certificates whose delegation signature has been verified, or
+   * pass {@code null} to verify the signature of every response. Defaults to a cache private to
+   * this instance; pass {@link DelegationCache#shared()}, or any other instance, to share verified
+   * delegations between clients.
+   *
+   * @return This instance
+   */
+  public RoughtimeClient delegationCache(DelegationCache cache) {
+    this.delegationCache = cache;
+    return this;
+  }
+
   /**
    * @return A copy of this instance's nonce value
    */
@@ -177,6 +226,19 @@ public final class RoughtimeClient {
     return isResponseValid ? null : invalidResponseCause;
   }
 
+  /**
+   * Exception-free alternative to {@link #invalidResponseCause()}.
+   *
+   * @return {@link RtStatus#OK} if the response was valid in all respects, otherwise the status of
+   * the failure, or {@code null} if no response has been processed
+   */
+  public RtStatus responseStatus() {
+    if (isResponseValid) {
+      return RtStatus.OK;
+    }
+    return (invalidResponseCause == null) ? null : invalidResponseCause.status();
+  }
+
   /**
    * Create a client request {@link RtMessage} populated with a unique nonce (NONC tag). The
    * returned message is ready to be sent to a Roughtime server.
@@ -190,6 +252,28 @@ public final class RoughtimeClient {
         .build();
   }
 
+  /**
+   * Encode a client request populated with this instance's nonce directly into {@code out} at its
+   * writer index. The bytes written are identical to encoding {@link #createRequest()}, but are
+   * copied from a pre-encoded request instead of building and encoding a new message.
+   *
+   * @return The number of bytes written
+   */
+  public int writeRequest(ByteBuf out) {
+    return REQUEST_TEMPLATE.writeTo(nonce, out);
+  }
+
+  /**
+   * Encode a client request populated with this instance's nonce directly into {@code out} at its
+   * position. The bytes written are identical to encoding {@link #createRequest()}, but are copied
+   * from a pre-encoded request instead of building and encoding a new message.
+   *
+   * @return The number of bytes written
+   */
+  public int writeRequest(ByteBuffer out) {
+    return REQUEST_TEMPLATE.writeTo(nonce, out);
+  }
+
   /**
    * Validate the server's response:
    * <ol>
@@ -226,16 +310,35 @@ public final class RoughtimeClient {
    * @throws SignatureInvalid The signature doesn't verify or is otherwise invalid
    */
   public void verifyDelegatedKey(RtMessage responseMsg) throws SignatureInvalid {
-    RtMessage certMsg = RtMessage.fromBytes(responseMsg.get(RtTag.CERT));
-    byte[] deleBytes = certMsg.get(RtTag.DELE);
-    byte[] certSig = certMsg.get(RtTag.SIG);
+    DelegationCache cache = delegationCache;
+    byte[] certBytes = (cache != null) ? getRequired(responseMsg, CERT) : null;
+
+    if (certBytes != null) {
+      DelegationCache.Delegation cached = cache.get(longTermPubKey, certBytes);
+      if (cached != null) {
+        delegatedKey = cached.publicKey();
+        delegationMinT = cached.minT();
+        delegationMaxT = cached.maxT();
+        return;
+      }
+    }
+
+    byte[] deleBytes = getRequired(responseMsg, CERT_DELE);
+    byte[] certSig = getRequired(responseMsg, CERT_SIG);
 
     validateDelegationSignature(deleBytes, certSig);
 
-    RtMessage deleMsg = RtMessage.fromBytes(deleBytes);
-    delegatedKey = deleMsg.get(RtTag.PUBK);
-    delegationMinT = BytesUtil.getLongLE(deleMsg.get(RtTag.MINT), 0);
-    delegationMaxT = BytesUtil.getLongLE(deleMsg.get(RtTag.MAXT), 0);
+    delegatedKey = getRequired(responseMsg, CERT_DELE_PUBK);
+    delegationMinT = responseMsg.getUInt64LE(CERT_DELE_MINT);
+    delegationMaxT = responseMsg.getUInt64LE(CERT_DELE_MAXT);
+
+    if (certBytes != null) {
+      cache.put(
+          longTermPubKey,
+          certBytes,
+          new DelegationCache.Delegation(delegatedKey, delegationMinT, delegationMaxT)
+      );
+    }
   }
 
   /**
@@ -264,12 +367,9 @@ public final class RoughtimeClient {
    * response's Merkle tree is invalid in some other way
    */
   public void verifyNonceIncluded(RtMessage responseMsg) throws MerkleTreeInvalid {
-    byte[] srepBytes = responseMsg.get(RtTag.SREP);
-    RtMessage srepMsg = RtMessage.fromBytes(srepBytes);
-
-    byte[] root = srepMsg.get(RtTag.ROOT);
+    byte[] root = getRequired(responseMsg, SREP_ROOT);
     byte[] path = responseMsg.get(RtTag.PATH);
-    int index = BytesUtil.getIntLE(responseMsg.get(RtTag.INDX), 0);
+    int index = responseMsg.getUInt32LE(RtTag.INDX);
 
     validateMerkleTree(root, path, index);
   }
@@ -283,31 +383,42 @@ public final class RoughtimeClient {
    * @throws MidpointInvalid if the response's midpoint falls outside the DELE time bounds
    */
   public void verifyMidpointBounds(RtMessage responseMsg) throws MidpointInvalid {
-    byte[] srepBytes = responseMsg.get(RtTag.SREP);
-    RtMessage srepMsg = RtMessage.fromBytes(srepBytes);
-
-    midpoint = BytesUtil.getLongLE(srepMsg.get(RtTag.MIDP), 0);
-    radius = BytesUtil.getIntLE(srepMsg.get(RtTag.RADI), 0);
+    midpoint = responseMsg.getUInt64LE(SREP_MIDP);
+    radius = responseMsg.getUInt32LE(SREP_RADI);
     validateMidpointBounds(midpoint);
   }
 
+  // Value at the end of path, which must be present
+  private static byte[] getRequired(RtMessage msg, RtTag[] path) {
+    byte[] value = msg.get(path);
+    if (value == null) {
+      throw new MissingTagException("path %s not present", Arrays.asList(path));
+    }
+    return value;
+  }
+
   /**
    * Verifies the long-term key signature of the delegation (DELE) certificate.
    */
   private void validateDelegationSignature(byte[] deleBytes, byte[] signature) {
     if (signature.length != SIGNATURE_LENGTH) {
-      throw new SignatureInvalid("CERT SIG value is the wrong length: " + signature.length);
+      throw new SignatureInvalid("CERT SIG value is the wrong length: %d", signature.length);
     }
 
     try {
-      RtEd25519.Verifier verifier = new RtEd25519.Verifier(longTermPubKey);
+      if (longTermVerifier == null) {
+        longTermVerifier = new RtEd25519.Verifier(longTermPubKey);
+      }
+      RtEd25519.Verifier verifier = longTermVerifier;
       verifier.update(CERTIFICATE_CONTEXT);
       verifier.update(deleBytes);
 
       if (!verifier.verify(signature)) {
-        throw new SignatureInvalid("signature on DELE does not match");
+        throw DELE_SIGNATURE_MISMATCH;
       }
     } catch (InvalidKeyException | SignatureException e) {
+      // Its state is unknown after an exception, so it is not used again
+      longTermVerifier = null;
       throw new SignatureInvalid(e.getMessage());
     }
   }
@@ -317,18 +428,24 @@ public final class RoughtimeClient {
    */
   private void validateSignedResponse(byte[] srepBytes, byte[] signature) {
     if (signature.length != SIGNATURE_LENGTH) {
-      throw new SignatureInvalid("top-level SIG is the wrong length: " + signature.length);
+      throw new SignatureInvalid("top-level SIG is the wrong length: %d", signature.length);
     }
 
     try {
-      RtEd25519.Verifier verifier = new RtEd25519.Verifier(delegatedKey);
+      if (delegatedVerifier == null || !Arrays.equals(delegatedVerifierKey, delegatedKey)) {
+        delegatedVerifier = new RtEd25519.Verifier(delegatedKey);
+        delegatedVerifierKey = delegatedKey;
+      }
+      RtEd25519.Verifier verifier = delegatedVerifier;
       verifier.update(SIGNED_RESPONSE_CONTEXT);
       verifier.update(srepBytes);
 
       if (!verifier.verify(signature)) {
-        throw new SignatureInvalid("signature on SREP does not match");
+        throw SREP_SIGNATURE_MISMATCH;
       }
     } catch (InvalidKeyException | SignatureException e) {
+      delegatedVerifier = null;
+      delegatedVerifierKey = null;
       throw new SignatureInvalid(e.getMessage());
     }
   }
@@ -346,7 +463,7 @@ public final class RoughtimeClient {
       byte[] expectedRoot = hasher.hashLeaf(nonce);
 
       if (!Arrays.equals(root, expectedRoot)) {
-        throw new MerkleTreeInvalid("nonce not found in response Merkle tree");
+        throw NONCE_NOT_FOUND;
       }
 
     } else if (path.length > 0) {
@@ -365,13 +482,12 @@ public final class RoughtimeClient {
       }
 
       if (!Arrays.equals(root, computedRoot)) {
-        throw new MerkleTreeInvalid("Merkle tree validation failed");
+        throw MERKLE_ROOT_MISMATCH;
       }
 
     } else {
       // Protocol spec violation
-      String exMsg = String.format("invalid state: path.length=%d, index=%d", path.length, index);
-      throw new MerkleTreeInvalid(exMsg);
+      throw new MerkleTreeInvalid("invalid state: path.length=%d, index=%d", path.length, index);
     }
   }
 
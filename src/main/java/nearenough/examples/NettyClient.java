@@ -18,13 +18,11 @@ package nearenough.examples;
 import static nearenough.util.BytesUtil.hexToBytes;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.handler.timeout.ReadTimeoutException;
 import io.netty.handler.timeout.ReadTimeoutHandler;
@@ -32,8 +30,10 @@ import io.netty.handler.timeout.ReadTimeoutHandler;
 import java.net.InetSocketAddress;
 import java.time.Instant;
 import nearenough.client.RoughtimeClient;
+import nearenough.netty.RtEnvelope;
+import nearenough.netty.RtMessageDecoder;
+import nearenough.netty.RtMessageEncoder;
 import nearenough.protocol.RtMessage;
-import nearenough.protocol.RtWire;
 
 /**
  * Use Netty to send a request to the given Roughtime server and dump the response (if any)
@@ -49,7 +49,7 @@ public final class NettyClient {
       "016e6e0284d24c37c6e4d7d8d5b4e1d3c1949ceaa545bf875616c9dce0c9bec1"
   );
 
-  private static final class RequestHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+  private static final class RequestHandler extends SimpleChannelInboundHandler<RtEnvelope> {
 
     private final InetSocketAddress addr;
     private final RoughtimeClient client;
@@ -67,11 +67,8 @@ public final class NettyClient {
       // Creates the client request
       RtMessage msg = client.createRequest();
 
-      // Encodes the request for network transmission
-      ByteBuf encodedMsg = RtWire.toWire(msg);
-
-      // Sends the request to the Roughtime server
-      ctx.writeAndFlush(new DatagramPacket(encodedMsg, addr))
+      // Sends the request to the Roughtime server; RtMessageEncoder encodes it for transmission
+      ctx.writeAndFlush(new RtEnvelope(msg, addr))
           .addListener(future -> {
             if (!future.isSuccess()) {
               System.out.println("Send failed " + future.cause().getMessage());
@@ -81,15 +78,12 @@ public final class NettyClient {
 
     @SuppressWarnings("Duplicates")
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) {
-      // A reply from the server has been received
-
-      System.out.printf(
-          "Read message of %d bytes from %s:\n", msg.content().readableBytes(), msg.sender()
-      );
+    protected void channelRead0(ChannelHandlerContext ctx, RtEnvelope msg) {
+      // A reply from the server has been received and parsed by RtMessageDecoder. The message
+      // is a view of the received datagram, released along with the envelope on return.
+      System.out.printf("Read message from %s:\n", msg.sender());
 
-      // Parse the response
-      RtMessage response = new RtMessage(msg.content());
+      RtMessage response = msg.content();
       System.out.println(response);
 
       // Validate the response. Checks that the message is well-formed, all signatures are valid,
@@ -147,6 +141,8 @@ public final class NettyClient {
           @Override
           protected void initChannel(NioDatagramChannel ch) {
             ch.pipeline()
+                .addLast(new RtMessageDecoder(true))
+                .addLast(new RtMessageEncoder())
                 .addLast(new ReadTimeoutHandler(5))
                 .addLast(new RequestHandler(addr));
           }
@@ -16,8 +16,6 @@ package nearenough.examples;
 
 import static nearenough.util.BytesUtil.hexToBytes;
 
-import io.netty.buffer.ByteBuf;
-
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.StandardProtocolFamily;
@@ -25,8 +23,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.time.Instant;
 import nearenough.client.RoughtimeClient;
+import nearenough.protocol.RtConstants;
 import nearenough.protocol.RtMessage;
-import nearenough.protocol.RtWire;
 
 /**
  * Use Java NIO to send a request to the given Roughtime server and dump the response (if any)
@@ -54,18 +52,16 @@ public final class NioClient {
       // Create a new RoughtimeClient instance
       RoughtimeClient client = new RoughtimeClient(INT08H_SERVER_PUBKEY);
 
-      // Create a request message
-      RtMessage request = client.createRequest();
-
-      // Encode for transmission
-      ByteBuf encodedRequest = RtWire.toWire(request);
+      // Encode a request for transmission directly into a direct send buffer
+      ByteBuffer sendBuf = ByteBuffer.allocateDirect(RtConstants.MIN_REQUEST_LENGTH);
+      int encodedSize = client.writeRequest(sendBuf);
+      sendBuf.flip();
 
       // Send the message
-      channel.send(encodedRequest.nioBuffer(), addr);
-      int bytesWritten = channel.send(encodedRequest.nioBuffer(), addr);
+      int bytesWritten = channel.send(sendBuf, addr);
 
       // Ensure the message was sent
-      if (bytesWritten != encodedRequest.readableBytes()) {
+      if (bytesWritten != encodedSize) {
         throw new RuntimeException("failed to fully write request");
       }
 
@@ -88,8 +84,8 @@ public final class NioClient {
         // A reply from the server has been received
         System.out.printf("Read message of %d bytes from %s:\n", recvBuf.remaining(), addr);
 
-        // Parse the response
-        RtMessage response = RtMessage.fromByteBuffer(recvBuf);
+        // Parse the response, ignoring any tags added by newer servers
+        RtMessage response = RtMessage.fromByteBuffer(recvBuf, true);
         System.out.println(response);
 
         // Validate the response. Checks that the message is well-formed, all signatures are valid,
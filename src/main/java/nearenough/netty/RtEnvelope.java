@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.netty;
+
+import static nearenough.util.Preconditions.checkNotNull;
+
+import io.netty.channel.AddressedEnvelope;
+import io.netty.util.AbstractReferenceCounted;
+import java.net.InetSocketAddress;
+import nearenough.protocol.RtMessage;
+
+/**
+ * An {@link RtMessage} together with the addresses of its sender and recipient.
+ * <p>
+ * Envelopes produced by {@link RtMessageDecoder} hold a zero-copy {@link RtMessage#view view} of
+ * the received datagram. Releasing the envelope {@link RtMessage#close() closes} the message,
+ * which in turn releases the datagram's buffer.
+ */
+public final class RtEnvelope extends AbstractReferenceCounted
+    implements AddressedEnvelope<RtMessage, InetSocketAddress> {
+
+  private final RtMessage content;
+  private final InetSocketAddress recipient;
+  private final InetSocketAddress sender;
+
+  /**
+   * Create an envelope for sending {@code content} to {@code recipient}
+   */
+  public RtEnvelope(RtMessage content, InetSocketAddress recipient) {
+    this(content, recipient, null);
+  }
+
+  /**
+   * Create an envelope for {@code content} sent by {@code sender} to {@code recipient}. The
+   * envelope takes ownership of {@code content} and closes it when released.
+   */
+  public RtEnvelope(RtMessage content, InetSocketAddress recipient, InetSocketAddress sender) {
+    this.content = checkNotNull(content, "content");
+    this.recipient = checkNotNull(recipient, "recipient");
+    this.sender = sender;
+  }
+
+  @Override
+  public RtMessage content() {
+    return content;
+  }
+
+  @Override
+  public InetSocketAddress sender() {
+    return sender;
+  }
+
+  @Override
+  public InetSocketAddress recipient() {
+    return recipient;
+  }
+
+  @Override
+  public RtEnvelope retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public RtEnvelope retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+
+  @Override
+  public RtEnvelope touch() {
+    return this;
+  }
+
+  @Override
+  public RtEnvelope touch(Object hint) {
+    return this;
+  }
+
+  @Override
+  protected void deallocate() {
+    content.close();
+  }
+
+  @Override
+  public String toString() {
+    return "RtEnvelope(" + sender + " => " + recipient + ", " + content + ")";
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.netty;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import java.util.List;
+import nearenough.protocol.RtMessage;
+
+/**
+ * Decodes each received {@link DatagramPacket} into an {@link RtEnvelope} without copying.
+ * <p>
+ * The envelope's message is a {@link RtMessage#view view} that retains the packet's buffer; the
+ * buffer is released once the envelope is. Handlers downstream must therefore release each
+ * envelope, for example by extending {@link io.netty.channel.SimpleChannelInboundHandler}.
+ * <p>
+ * A malformed packet is released and its {@link
+ * nearenough.protocol.exceptions.InvalidRoughTimeMessage} propagated through
+ * {@code exceptionCaught} as the cause of a {@link io.netty.handler.codec.DecoderException}.
+ * Unknown tags are treated as malformed unless the decoder is created to skip them.
+ */
+@Sharable
+public final class RtMessageDecoder extends MessageToMessageDecoder<DatagramPacket> {
+
+  private final boolean skipUnknownTags;
+
+  public RtMessageDecoder() {
+    this(false);
+  }
+
+  /**
+   * @param skipUnknownTags If true, tags this implementation does not recognize are ignored
+   */
+  public RtMessageDecoder(boolean skipUnknownTags) {
+    this.skipUnknownTags = skipUnknownTags;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, DatagramPacket packet, List<Object> out) {
+    RtMessage msg = RtMessage.view(packet.content(), skipUnknownTags);
+    out.add(new RtEnvelope(msg, packet.recipient(), packet.sender()));
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AddressedEnvelope;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import java.net.InetSocketAddress;
+import java.util.List;
+import nearenough.protocol.RtMessage;
+import nearenough.protocol.RtWire;
+
+/**
+ * Encodes outbound Roughtime messages into buffers from the channel's allocator.
+ * <p>
+ * An {@link AddressedEnvelope} whose content is an {@link RtMessage}, such as {@link RtEnvelope},
+ * is encoded into a {@link DatagramPacket} for its recipient and then released. A bare {@link
+ * RtMessage} is encoded into a {@link ByteBuf}, which suits connected datagram channels.
+ */
+@Sharable
+public final class RtMessageEncoder extends MessageToMessageEncoder<Object> {
+
+  @Override
+  public boolean acceptOutboundMessage(Object msg) {
+    if (msg instanceof RtMessage) {
+      return true;
+    }
+    return (msg instanceof AddressedEnvelope)
+        && (((AddressedEnvelope<?, ?>) msg).content() instanceof RtMessage)
+        && (((AddressedEnvelope<?, ?>) msg).recipient() instanceof InetSocketAddress);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) {
+    if (msg instanceof RtMessage) {
+      out.add(encode(ctx, (RtMessage) msg));
+      return;
+    }
+
+    AddressedEnvelope<RtMessage, InetSocketAddress> envelope =
+        (AddressedEnvelope<RtMessage, InetSocketAddress>) msg;
+
+    ByteBuf encoded = encode(ctx, envelope.content());
+    out.add(new DatagramPacket(encoded, envelope.recipient(), envelope.sender()));
+  }
+
+  private static ByteBuf encode(ChannelHandlerContext ctx, RtMessage msg) {
+    ByteBuf buf = ctx.alloc().buffer(RtWire.encodedSize(msg));
+    try {
+      RtWire.writeTo(msg, buf);
+      return buf;
+    } catch (RuntimeException e) {
+      buf.release();
+      throw e;
+    }
+  }
+}
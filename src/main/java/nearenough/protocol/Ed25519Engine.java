@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.protocol.Ed25519Field.add;
+import static nearenough.protocol.Ed25519Field.copy;
+import static nearenough.protocol.Ed25519Field.create;
+import static nearenough.protocol.Ed25519Field.fromBytes;
+import static nearenough.protocol.Ed25519Field.invert;
+import static nearenough.protocol.Ed25519Field.isNegative;
+import static nearenough.protocol.Ed25519Field.isZero;
+import static nearenough.protocol.Ed25519Field.mul;
+import static nearenough.protocol.Ed25519Field.neg;
+import static nearenough.protocol.Ed25519Field.one;
+import static nearenough.protocol.Ed25519Field.pow22523;
+import static nearenough.protocol.Ed25519Field.sqr;
+import static nearenough.protocol.Ed25519Field.sub;
+import static nearenough.protocol.Ed25519Field.toBytes;
+import static nearenough.protocol.Ed25519Field.zero;
+import static nearenough.protocol.RtConstants.PUBKEY_LENGTH;
+import static nearenough.protocol.RtConstants.SIGNATURE_LENGTH;
+
+import java.security.DigestException;
+import java.security.InvalidKeyException;
+import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+/**
+ * Verifies Ed25519 signatures with no dependencies beyond the JDK's SHA-512.
+ * <p>
+ * Computes {@code [S]B - [h]A} by a double-scalar multiplication over sliding windows: the odd
+ * multiples up to 127B of the base point are precomputed once per JVM, and the odd multiples up
+ * to 15A of each public key once per key (and shared through the cache of {@link
+ * RtEd25519#KEY_CACHE_SIZE} keys that the i2p provider also uses). Field elements, points and
+ * scalars are preallocated per engine, so verifying a signature allocates nothing once the
+ * message buffer has grown to fit.
+ * <p>
+ * Verification follows RFC 8032 section 5.1.7, additionally rejecting signatures whose S is not
+ * below the group order and public keys that are not canonically encoded, which the {@code
+ * net.i2p.crypto:eddsa} engine accepts. Signing is not supported. Instances are not thread-safe.
+ */
+/*package*/ final class Ed25519Engine extends Signature {
+
+  private static final int HASH_LENGTH = 64;
+
+  // Largest digits of the sliding windows, and so the largest odd multiples in each table
+  private static final int KEY_WINDOW_MAX = 15;
+  private static final int BASE_WINDOW_MAX = 127;
+
+  // The curve constant d = -121665/121666, 2d, and sqrt(-1), computed rather than transcribed
+  private static final long[] D = create();
+  private static final long[] D2 = create();
+  private static final long[] SQRT_M1 = create();
+
+  // Odd multiples B, 3B, 5B, ..., 127B of the base point, in affine form
+  private static final Cached[] BASE_MULTIPLES = new Cached[(BASE_WINDOW_MAX + 1) / 2];
+
+  static {
+    Ed25519Engine engine = new Ed25519Engine(null);
+    long[][] t = engine.t;
+
+    one(t[0]);
+    add(t[1], t[0], t[0]);                        // 2
+    pow22523(t[2], t[1], t[3], t[4], t[5], t[6]);
+    sqr(t[2], t[2]);
+    mul(SQRT_M1, t[2], t[1]);                     // 2^((p-1)/4)
+
+    long[] n = create();
+    n[0] = 121666;
+    invert(t[2], n, t[3], t[4], t[5], t[6]);
+    n[0] = -121665;
+    mul(D, t[2], n);
+    add(D2, D, D);
+
+    byte[] encodedBase = new byte[32];
+    Arrays.fill(encodedBase, (byte) 0x66);
+    encodedBase[0] = 0x58;                        // y = 4/5, x positive
+
+    Point base = new Point();
+    engine.decode(base, encodedBase);
+    Cached twiceBase = new Cached();
+    toCached(twiceBase, engine.twice(base));
+
+    Point multiple = base;
+    for (int i = 0; i < BASE_MULTIPLES.length; i++) {
+      if (i > 0) {
+        engine.addPoint(engine.sum, multiple, twiceBase, false);
+        multiple = new Point();
+        toP3(multiple, engine.sum);
+      }
+      BASE_MULTIPLES[i] = engine.toAffineCached(multiple);
+    }
+  }
+
+  /**
+   * A public key, with the odd multiples -A, -3A, ..., -15A needed to verify its signatures.
+   */
+  /*package*/ static final class DecodedKey {
+
+    private final byte[] encoded;
+    private final Cached[] negatedMultiples = new Cached[(KEY_WINDOW_MAX + 1) / 2];
+
+    private DecodedKey(byte[] encoded) {
+      this.encoded = encoded;
+    }
+  }
+
+  // A point in extended coordinates (X:Y:Z:T) with x = X/Z, y = Y/Z, xy = T/Z; also used for
+  // the "completed" result of additions, from which extended or projective (X:Y:Z) form follows
+  private static final class Point {
+
+    private final long[] x = create();
+    private final long[] y = create();
+    private final long[] z = create();
+    private final long[] t = create();
+  }
+
+  // A point prepared as the second operand of additions: (Y+X, Y-X, Z, 2dT). Affine points have
+  // a null z, standing for Z = 1.
+  private static final class Cached {
+
+    private final long[] yPlusX = create();
+    private final long[] yMinusX = create();
+    private long[] z = create();
+    private final long[] t2d = create();
+  }
+
+  /**
+   * @return The decoded form of {@code publicKey}, from the cache if it was decoded recently
+   * @throws InvalidKeyException if {@code publicKey} does not encode a point on the curve
+   */
+  /*package*/ static DecodedKey decodePublicKey(byte[] publicKey) throws InvalidKeyException {
+    if (publicKey.length != PUBKEY_LENGTH) {
+      throw new InvalidKeyException("incorrect public key size");
+    }
+
+    RtEd25519.DecodedKeys cached = RtEd25519.cachedKeys(publicKey);
+    if (cached != null && cached.nearenough != null) {
+      return cached.nearenough;
+    }
+
+    DecodedKey key = new DecodedKey(publicKey.clone());
+    Ed25519Engine engine = new Ed25519Engine(null);
+    Point a = new Point();
+    if (!engine.decode(a, key.encoded)) {
+      throw new InvalidKeyException("invalid Ed25519 public key");
+    }
+
+    // -A
+    neg(a.x, a.x);
+    neg(a.t, a.t);
+
+    Cached twice = new Cached();
+    toCached(twice, engine.twice(a));
+
+    Point multiple = a;
+    for (int i = 0; i < key.negatedMultiples.length; i++) {
+      if (i > 0) {
+        engine.addPoint(engine.sum, multiple, twice, false);
+        multiple = new Point();
+        toP3(multiple, engine.sum);
+      }
+      key.negatedMultiples[i] = new Cached();
+      toCached(key.negatedMultiples[i], multiple);
+    }
+
+    RtEd25519.cacheKeys(key.encoded).nearenough = key;
+    return key;
+  }
+
+  private final DecodedKey key;
+  private final MessageDigest digest = RtHashing.newSha512();
+
+  private byte[] message = new byte[256];
+  private int messageLength;
+
+  private final byte[] hash = new byte[HASH_LENGTH];
+  private final byte[] h = new byte[32];
+  private final long[] reduceScratch = new long[Ed25519Scalar.REDUCE_SCRATCH_LIMBS];
+  private final byte[] hSlide = new byte[256];
+  private final byte[] sSlide = new byte[256];
+  private final byte[] encoded = new byte[32];
+
+  private final Point result = new Point();
+  private final Point sum = new Point();
+  private final Point extended = new Point();
+  private final long[][] t = new long[8][];
+
+  /**
+   * Creates an engine that verifies signatures made by {@code key}.
+   */
+  /*package*/ Ed25519Engine(DecodedKey key) {
+    super("Ed25519");
+    this.key = key;
+    this.state = VERIFY;
+
+    for (int i = 0; i < t.length; i++) {
+      t[i] = create();
+    }
+  }
+
+  @Override
+  protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+    throw new InvalidKeyException("keys are provided at construction");
+  }
+
+  @Override
+  protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+    throw new InvalidKeyException("signing is not supported");
+  }
+
+  @Override
+  protected void engineUpdate(byte b) {
+    ensureCapacity(1);
+    message[messageLength++] = b;
+  }
+
+  @Override
+  protected void engineUpdate(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    System.arraycopy(b, off, message, messageLength, len);
+    messageLength += len;
+  }
+
+  @Override
+  protected byte[] engineSign() throws SignatureException {
+    throw new SignatureException("signing is not supported");
+  }
+
+  @Override
+  protected boolean engineVerify(byte[] signature) throws SignatureException {
+    if (signature.length != SIGNATURE_LENGTH) {
+      messageLength = 0;
+      throw new SignatureException("signature length is wrong");
+    }
+
+    try {
+      return checkSignature(signature);
+    } finally {
+      messageLength = 0;
+    }
+  }
+
+  @Override
+  @Deprecated
+  protected void engineSetParameter(String param, Object value) {
+    throw new InvalidParameterException("no parameters");
+  }
+
+  @Override
+  @Deprecated
+  protected Object engineGetParameter(String param) {
+    throw new InvalidParameterException("no parameters");
+  }
+
+  private void ensureCapacity(int len) {
+    if (message.length - messageLength < len) {
+      message = Arrays.copyOf(message, Math.max(message.length * 2, messageLength + len));
+    }
+  }
+
+  // Checks that [S]B - [h]A encodes to R, with h = SHA-512(R || A || M) mod L
+  private boolean checkSignature(byte[] signature) throws SignatureException {
+    if (!Ed25519Scalar.isReduced(signature, 32)) {
+      return false;
+    }
+
+    digest.update(signature, 0, 32);
+    digest.update(key.encoded);
+    digest.update(message, 0, messageLength);
+    try {
+      digest.digest(hash, 0, HASH_LENGTH);
+    } catch (DigestException e) {
+      throw new SignatureException(e);
+    }
+    Ed25519Scalar.reduce(h, hash, reduceScratch);
+
+    Ed25519Scalar.slide(hSlide, h, 0, KEY_WINDOW_MAX);
+    Ed25519Scalar.slide(sSlide, signature, 32, BASE_WINDOW_MAX);
+
+    int i = 255;
+    while (i >= 0 && hSlide[i] == 0 && sSlide[i] == 0) {
+      i--;
+    }
+
+    // result is kept in projective (X:Y:Z) form between iterations
+    zero(result.x);
+    one(result.y);
+    one(result.z);
+
+    for (; i >= 0; i--) {
+      dbl(sum, result);
+
+      int hDigit = hSlide[i];
+      if (hDigit != 0) {
+        toP3(extended, sum);
+        addPoint(sum, extended, key.negatedMultiples[Math.abs(hDigit) / 2], hDigit < 0);
+      }
+
+      int sDigit = sSlide[i];
+      if (sDigit != 0) {
+        toP3(extended, sum);
+        addPoint(sum, extended, BASE_MULTIPLES[Math.abs(sDigit) / 2], sDigit < 0);
+      }
+
+      toP2(result, sum);
+    }
+
+    invert(t[0], result.z, t[1], t[2], t[3], t[4]);
+    mul(t[1], result.x, t[0]);
+    mul(t[2], result.y, t[0]);
+    toBytes(encoded, 0, t[2]);
+    if (isNegative(t[1], hash)) {
+      encoded[31] |= (byte) 0x80;
+    }
+
+    int diff = 0;
+    for (int j = 0; j < 32; j++) {
+      diff |= encoded[j] ^ signature[j];
+    }
+    return diff == 0;
+  }
+
+  // Decodes a canonically encoded point into extended form, returning false if there is none
+  private boolean decode(Point p, byte[] s) {
+    long[] u = t[0];
+    long[] v = t[1];
+    long[] v3 = t[2];
+    long[] check = t[3];
+
+    fromBytes(p.y, s, 0);
+    toBytes(encoded, 0, p.y);
+    encoded[31] |= (byte) (s[31] & 0x80);
+    if (!Arrays.equals(encoded, s)) {
+      return false;                               // y >= p
+    }
+
+    one(p.z);
+    sqr(u, p.y);
+    mul(v, u, D);
+    sub(u, u, p.z);                               // u = y^2 - 1
+    add(v, v, p.z);                               // v = dy^2 + 1
+
+    sqr(v3, v);
+    mul(v3, v3, v);                               // v^3
+    sqr(p.x, v3);
+    mul(p.x, p.x, v);
+    mul(p.x, p.x, u);                             // uv^7
+    pow22523(p.x, p.x, t[4], t[5], t[6], t[7]);
+    mul(p.x, p.x, v3);
+    mul(p.x, p.x, u);                             // x = uv^3 (uv^7)^((p-5)/8)
+
+    sqr(check, p.x);
+    mul(check, check, v);                         // vx^2
+    sub(p.t, check, u);
+    if (!isZero(p.t, hash)) {
+      add(p.t, check, u);
+      if (!isZero(p.t, hash)) {
+        return false;                             // no square root: not on the curve
+      }
+      mul(p.x, p.x, SQRT_M1);
+    }
+
+    boolean xIsZero = isZero(p.x, hash);
+    boolean signBit = (s[31] & 0x80) != 0;
+    if (xIsZero && signBit) {
+      return false;
+    }
+    if (isNegative(p.x, hash) != signBit) {
+      neg(p.x, p.x);
+    }
+
+    mul(p.t, p.x, p.y);
+    return true;
+  }
+
+  // r = 2p, for p in projective or extended form, as a completed point
+  private void dbl(Point r, Point p) {
+    long[] aa = t[0];
+
+    sqr(r.x, p.x);                                // X^2
+    sqr(r.z, p.y);                                // Y^2
+    sqr(r.t, p.z);
+    add(r.t, r.t, r.t);                           // 2Z^2
+    add(r.y, p.x, p.y);
+    sqr(aa, r.y);                                 // (X+Y)^2
+    add(r.y, r.z, r.x);
+    sub(r.z, r.z, r.x);
+    sub(r.x, aa, r.y);
+    sub(r.t, r.t, r.z);
+  }
+
+  // r = p + q, or p - q if subtract, for p in extended form, as a completed point
+  private void addPoint(Point r, Point p, Cached q, boolean subtract) {
+    long[] d2 = t[0];
+
+    add(r.x, p.y, p.x);
+    sub(r.y, p.y, p.x);
+    mul(r.z, r.x, subtract ? q.yMinusX : q.yPlusX);
+    mul(r.y, r.y, subtract ? q.yPlusX : q.yMinusX);
+    mul(r.t, q.t2d, p.t);
+    if (q.z == null) {
+      add(d2, p.z, p.z);
+    } else {
+      mul(d2, p.z, q.z);
+      add(d2, d2, d2);
+    }
+    sub(r.x, r.z, r.y);
+    add(r.y, r.z, r.y);
+    if (subtract) {
+      sub(r.z, d2, r.t);
+      add(r.t, d2, r.t);
+    } else {
+      add(r.z, d2, r.t);
+      sub(r.t, d2, r.t);
+    }
+  }
+
+  // Completed point to projective form
+  private static void toP2(Point r, Point p) {
+    mul(r.x, p.x, p.t);
+    mul(r.y, p.y, p.z);
+    mul(r.z, p.z, p.t);
+  }
+
+  // Completed point to extended form
+  private static void toP3(Point r, Point p) {
+    mul(r.x, p.x, p.t);
+    mul(r.y, p.y, p.z);
+    mul(r.z, p.z, p.t);
+    mul(r.t, p.x, p.y);
+  }
+
+  private static void toCached(Cached r, Point p) {
+    add(r.yPlusX, p.y, p.x);
+    sub(r.yMinusX, p.y, p.x);
+    copy(r.z, p.z);
+    mul(r.t2d, p.t, D2);
+  }
+
+  // 2p, for p in extended form, in extended form
+  private Point twice(Point p) {
+    Point doubled = new Point();
+    dbl(sum, p);
+    toP3(doubled, sum);
+    return doubled;
+  }
+
+  // p in affine form, for use as a table entry
+  private Cached toAffineCached(Point p) {
+    long[] x = t[1];
+    long[] y = t[2];
+    long[] zInverse = t[3];
+
+    invert(zInverse, p.z, t[4], t[5], t[6], t[7]);
+    mul(x, p.x, zInverse);
+    mul(y, p.y, zInverse);
+
+    Cached r = new Cached();
+    add(r.yPlusX, y, x);
+    sub(r.yMinusX, y, x);
+    r.z = null;
+    mul(r.t2d, x, y);
+    mul(r.t2d, r.t2d, D2);
+    return r;
+  }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+/**
+ * Arithmetic modulo p = 2^255 - 19 for {@link Ed25519Engine}.
+ * <p>
+ * An element is a {@code long[10]} of signed limbs holding alternately 26 and 25 bits, so that
+ * element {@code f} has the value {@code f[0] + f[1]*2^26 + f[2]*2^51 + f[3]*2^77 + ... +
+ * f[9]*2^230}, as in the ref10 implementation by Bernstein et al. Products of limbs fit in 64
+ * bits, which lets multiplication accumulate without 128-bit intermediates.
+ * <p>
+ * Multiplication, squaring and decoding return carried limbs of at most 26 bits. Addition,
+ * subtraction and negation do not carry, so their limbs grow; {@link #mul} and {@link #sqr}
+ * accept inputs up to four times the size of carried limbs, which allows the sum or difference
+ * of up to four carried elements, and {@link #toBytes} accepts any such input.
+ * <p>
+ * Operations write their result to the first argument, which may also be an input. None of them
+ * allocate, and none of them are constant-time: they only ever handle public values.
+ */
+/*package*/ final class Ed25519Field {
+
+  /*package*/ static final int LIMBS = 10;
+
+  private Ed25519Field() {
+  }
+
+  /*package*/ static long[] create() {
+    return new long[LIMBS];
+  }
+
+  /*package*/ static void copy(long[] h, long[] f) {
+    System.arraycopy(f, 0, h, 0, LIMBS);
+  }
+
+  /*package*/ static void zero(long[] h) {
+    for (int i = 0; i < LIMBS; i++) {
+      h[i] = 0;
+    }
+  }
+
+  /*package*/ static void one(long[] h) {
+    zero(h);
+    h[0] = 1;
+  }
+
+  /*package*/ static void add(long[] h, long[] f, long[] g) {
+    for (int i = 0; i < LIMBS; i++) {
+      h[i] = f[i] + g[i];
+    }
+  }
+
+  /*package*/ static void sub(long[] h, long[] f, long[] g) {
+    for (int i = 0; i < LIMBS; i++) {
+      h[i] = f[i] - g[i];
+    }
+  }
+
+  /*package*/ static void neg(long[] h, long[] f) {
+    for (int i = 0; i < LIMBS; i++) {
+      h[i] = -f[i];
+    }
+  }
+
+  /*package*/ static void mul(long[] h, long[] f, long[] g) {
+    long f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4];
+    long f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8], f9 = f[9];
+    long g0 = g[0], g1 = g[1], g2 = g[2], g3 = g[3], g4 = g[4];
+    long g5 = g[5], g6 = g[6], g7 = g[7], g8 = g[8], g9 = g[9];
+    long g1_19 = 19 * g1, g2_19 = 19 * g2, g3_19 = 19 * g3, g4_19 = 19 * g4;
+    long g5_19 = 19 * g5, g6_19 = 19 * g6, g7_19 = 19 * g7, g8_19 = 19 * g8;
+    long g9_19 = 19 * g9;
+    long f1_2 = 2 * f1, f3_2 = 2 * f3, f5_2 = 2 * f5, f7_2 = 2 * f7, f9_2 = 2 * f9;
+
+    long h0 = f0 * g0 + f1_2 * g9_19 + f2 * g8_19 + f3_2 * g7_19 + f4 * g6_19 + f5_2 * g5_19
+        + f6 * g4_19 + f7_2 * g3_19 + f8 * g2_19 + f9_2 * g1_19;
+    long h1 = f0 * g1 + f1 * g0 + f2 * g9_19 + f3 * g8_19 + f4 * g7_19 + f5 * g6_19 + f6 * g5_19
+        + f7 * g4_19 + f8 * g3_19 + f9 * g2_19;
+    long h2 = f0 * g2 + f1_2 * g1 + f2 * g0 + f3_2 * g9_19 + f4 * g8_19 + f5_2 * g7_19 + f6 * g6_19
+        + f7_2 * g5_19 + f8 * g4_19 + f9_2 * g3_19;
+    long h3 = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9_19 + f5 * g8_19 + f6 * g7_19
+        + f7 * g6_19 + f8 * g5_19 + f9 * g4_19;
+    long h4 = f0 * g4 + f1_2 * g3 + f2 * g2 + f3_2 * g1 + f4 * g0 + f5_2 * g9_19 + f6 * g8_19
+        + f7_2 * g7_19 + f8 * g6_19 + f9_2 * g5_19;
+    long h5 = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1 + f5 * g0 + f6 * g9_19 + f7 * g8_19
+        + f8 * g7_19 + f9 * g6_19;
+    long h6 = f0 * g6 + f1_2 * g5 + f2 * g4 + f3_2 * g3 + f4 * g2 + f5_2 * g1 + f6 * g0
+        + f7_2 * g9_19 + f8 * g8_19 + f9_2 * g7_19;
+    long h7 = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3 + f5 * g2 + f6 * g1 + f7 * g0
+        + f8 * g9_19 + f9 * g8_19;
+    long h8 = f0 * g8 + f1_2 * g7 + f2 * g6 + f3_2 * g5 + f4 * g4 + f5_2 * g3 + f6 * g2 + f7_2 * g1
+        + f8 * g0 + f9_2 * g9_19;
+    long h9 = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5 + f5 * g4 + f6 * g3 + f7 * g2
+        + f8 * g1 + f9 * g0;
+
+    carry(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+  }
+
+  /*package*/ static void sqr(long[] h, long[] f) {
+    long f0 = f[0], f1 = f[1], f2 = f[2], f3 = f[3], f4 = f[4];
+    long f5 = f[5], f6 = f[6], f7 = f[7], f8 = f[8], f9 = f[9];
+    long f0_2 = 2 * f0, f1_2 = 2 * f1, f2_2 = 2 * f2, f3_2 = 2 * f3, f4_2 = 2 * f4, f5_2 = 2 * f5;
+    long f6_2 = 2 * f6, f7_2 = 2 * f7, f8_2 = 2 * f8, f6_19 = 19 * f6, f7_19 = 19 * f7;
+    long f8_19 = 19 * f8, f9_19 = 19 * f9, f5_38 = 38 * f5, f7_38 = 38 * f7, f9_38 = 38 * f9;
+
+    long h0 = f0 * f0 + f1_2 * f9_38 + f2_2 * f8_19 + f3_2 * f7_38 + f4_2 * f6_19 + f5 * f5_38;
+    long h1 = f0_2 * f1 + f2_2 * f9_19 + f3_2 * f8_19 + f4_2 * f7_19 + f5_2 * f6_19;
+    long h2 = f0_2 * f2 + f1_2 * f1 + f3_2 * f9_38 + f4_2 * f8_19 + f5_2 * f7_38 + f6 * f6_19;
+    long h3 = f0_2 * f3 + f1_2 * f2 + f4_2 * f9_19 + f5_2 * f8_19 + f6_2 * f7_19;
+    long h4 = f0_2 * f4 + f1_2 * f3_2 + f2 * f2 + f5_2 * f9_38 + f6_2 * f8_19 + f7 * f7_38;
+    long h5 = f0_2 * f5 + f1_2 * f4 + f2_2 * f3 + f6_2 * f9_19 + f7_2 * f8_19;
+    long h6 = f0_2 * f6 + f1_2 * f5_2 + f2_2 * f4 + f3_2 * f3 + f7_2 * f9_38 + f8 * f8_19;
+    long h7 = f0_2 * f7 + f1_2 * f6 + f2_2 * f5 + f3_2 * f4 + f8_2 * f9_19;
+    long h8 = f0_2 * f8 + f1_2 * f7_2 + f2_2 * f6 + f3_2 * f5_2 + f4 * f4 + f9 * f9_38;
+    long h9 = f0_2 * f9 + f1_2 * f8 + f2_2 * f7 + f3_2 * f6 + f4_2 * f5;
+
+    carry(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+  }
+
+  // h = f^(2^n)
+  /*package*/ static void sqrN(long[] h, long[] f, int n) {
+    sqr(h, f);
+    for (int i = 1; i < n; i++) {
+      sqr(h, h);
+    }
+  }
+
+  /**
+   * h = 1/f, computed as f^(p-2). Temporaries {@code t0..t3} must be distinct from each other and
+   * from {@code h} and {@code f}.
+   */
+  /*package*/ static void invert(
+      long[] h, long[] f, long[] t0, long[] t1, long[] t2, long[] t3) {
+
+    pow2250(f, t0, t1, t2, t3);   // t0 = f^11, t1 = f^(2^250-1)
+    sqrN(t1, t1, 5);              // f^(2^255-2^5)
+    mul(h, t1, t0);               // f^(2^255-21)
+  }
+
+  /**
+   * h = f^((p-5)/8), the exponentiation needed for square roots. Temporaries {@code t0..t3} must
+   * be distinct from each other and from {@code h} and {@code f}.
+   */
+  /*package*/ static void pow22523(
+      long[] h, long[] f, long[] t0, long[] t1, long[] t2, long[] t3) {
+
+    pow2250(f, t0, t1, t2, t3);   // t1 = f^(2^250-1)
+    sqrN(t1, t1, 2);              // f^(2^252-4)
+    mul(h, t1, f);                // f^(2^252-3)
+  }
+
+  // Leaves f^11 in t0 and f^(2^250-1) in t1
+  private static void pow2250(long[] f, long[] t0, long[] t1, long[] t2, long[] t3) {
+    sqr(t0, f);                   // 2
+    sqrN(t1, t0, 2);              // 8
+    mul(t1, f, t1);               // 9
+    mul(t0, t0, t1);              // 11
+    sqr(t2, t0);                  // 22
+    mul(t1, t1, t2);              // 31 = 2^5-1
+    sqrN(t2, t1, 5);
+    mul(t1, t2, t1);              // 2^10-1
+    sqrN(t2, t1, 10);
+    mul(t2, t2, t1);              // 2^20-1
+    sqrN(t3, t2, 20);
+    mul(t2, t3, t2);              // 2^40-1
+    sqrN(t2, t2, 10);
+    mul(t1, t2, t1);              // 2^50-1
+    sqrN(t2, t1, 50);
+    mul(t2, t2, t1);              // 2^100-1
+    sqrN(t3, t2, 100);
+    mul(t2, t3, t2);              // 2^200-1
+    sqrN(t2, t2, 50);
+    mul(t1, t2, t1);              // 2^250-1
+  }
+
+  /**
+   * Decodes the low 255 bits of {@code s[offset..offset+32)}, little-endian, ignoring the top bit.
+   * Values from p to 2^255-1 are reduced.
+   */
+  /*package*/ static void fromBytes(long[] h, byte[] s, int offset) {
+    long h0 = load4(s, offset);
+    long h1 = load3(s, offset + 4) << 6;
+    long h2 = load3(s, offset + 7) << 5;
+    long h3 = load3(s, offset + 10) << 3;
+    long h4 = load3(s, offset + 13) << 2;
+    long h5 = load4(s, offset + 16);
+    long h6 = load3(s, offset + 20) << 7;
+    long h7 = load3(s, offset + 23) << 5;
+    long h8 = load3(s, offset + 26) << 4;
+    long h9 = (load3(s, offset + 29) & 0x7fffff) << 2;
+
+    carry(h, h0, h1, h2, h3, h4, h5, h6, h7, h8, h9);
+  }
+
+  /**
+   * Encodes the canonical value of {@code h}, in [0, p), as 32 little-endian bytes. Carries the
+   * limbs of {@code h} in place, which leaves its value unchanged.
+   */
+  /*package*/ static void toBytes(byte[] s, int offset, long[] h) {
+    carry(h);
+
+    long h0 = h[0], h1 = h[1], h2 = h[2], h3 = h[3], h4 = h[4];
+    long h5 = h[5], h6 = h[6], h7 = h[7], h8 = h[8], h9 = h[9];
+
+    // q is 1 if h >= p and 0 otherwise, found by propagating the carry of h + 19 through the limbs
+    long q = (19 * h9 + (1L << 24)) >> 25;
+    q = (h0 + q) >> 26;
+    q = (h1 + q) >> 25;
+    q = (h2 + q) >> 26;
+    q = (h3 + q) >> 25;
+    q = (h4 + q) >> 26;
+    q = (h5 + q) >> 25;
+    q = (h6 + q) >> 26;
+    q = (h7 + q) >> 25;
+    q = (h8 + q) >> 26;
+    q = (h9 + q) >> 25;
+
+    // h - q*p, as h + 19q with the 2^255 bit discarded
+    h0 += 19 * q;
+
+    long c;
+    c = h0 >> 26;
+    h1 += c;
+    h0 -= c << 26;
+    c = h1 >> 25;
+    h2 += c;
+    h1 -= c << 25;
+    c = h2 >> 26;
+    h3 += c;
+    h2 -= c << 26;
+    c = h3 >> 25;
+    h4 += c;
+    h3 -= c << 25;
+    c = h4 >> 26;
+    h5 += c;
+    h4 -= c << 26;
+    c = h5 >> 25;
+    h6 += c;
+    h5 -= c << 25;
+    c = h6 >> 26;
+    h7 += c;
+    h6 -= c << 26;
+    c = h7 >> 25;
+    h8 += c;
+    h7 -= c << 25;
+    c = h8 >> 26;
+    h9 += c;
+    h8 -= c << 26;
+    c = h9 >> 25;
+    h9 -= c << 25;
+
+    s[offset] = (byte) h0;
+    s[offset + 1] = (byte) (h0 >> 8);
+    s[offset + 2] = (byte) (h0 >> 16);
+    s[offset + 3] = (byte) ((h0 >> 24) | (h1 << 2));
+    s[offset + 4] = (byte) (h1 >> 6);
+    s[offset + 5] = (byte) (h1 >> 14);
+    s[offset + 6] = (byte) ((h1 >> 22) | (h2 << 3));
+    s[offset + 7] = (byte) (h2 >> 5);
+    s[offset + 8] = (byte) (h2 >> 13);
+    s[offset + 9] = (byte) ((h2 >> 21) | (h3 << 5));
+    s[offset + 10] = (byte) (h3 >> 3);
+    s[offset + 11] = (byte) (h3 >> 11);
+    s[offset + 12] = (byte) ((h3 >> 19) | (h4 << 6));
+    s[offset + 13] = (byte) (h4 >> 2);
+    s[offset + 14] = (byte) (h4 >> 10);
+    s[offset + 15] = (byte) (h4 >> 18);
+    s[offset + 16] = (byte) h5;
+    s[offset + 17] = (byte) (h5 >> 8);
+    s[offset + 18] = (byte) (h5 >> 16);
+    s[offset + 19] = (byte) ((h5 >> 24) | (h6 << 1));
+    s[offset + 20] = (byte) (h6 >> 7);
+    s[offset + 21] = (byte) (h6 >> 15);
+    s[offset + 22] = (byte) ((h6 >> 23) | (h7 << 3));
+    s[offset + 23] = (byte) (h7 >> 5);
+    s[offset + 24] = (byte) (h7 >> 13);
+    s[offset + 25] = (byte) ((h7 >> 21) | (h8 << 4));
+    s[offset + 26] = (byte) (h8 >> 4);
+    s[offset + 27] = (byte) (h8 >> 12);
+    s[offset + 28] = (byte) ((h8 >> 20) | (h9 << 6));
+    s[offset + 29] = (byte) (h9 >> 2);
+    s[offset + 30] = (byte) (h9 >> 10);
+    s[offset + 31] = (byte) (h9 >> 18);
+  }
+
+  /**
+   * @return {@code True} if the canonical value of {@code f} is zero. {@code scratch} is a
+   * byte[32] overwritten with the encoding of {@code f}.
+   */
+  /*package*/ static boolean isZero(long[] f, byte[] scratch) {
+    toBytes(scratch, 0, f);
+    int bits = 0;
+    for (int i = 0; i < 32; i++) {
+      bits |= scratch[i];
+    }
+    return bits == 0;
+  }
+
+  /**
+   * @return {@code True} if the canonical value of {@code f} is odd, the "sign" of an Ed25519
+   * x-coordinate. {@code scratch} is a byte[32] overwritten with the encoding of {@code f}.
+   */
+  /*package*/ static boolean isNegative(long[] f, byte[] scratch) {
+    toBytes(scratch, 0, f);
+    return (scratch[0] & 1) != 0;
+  }
+
+  private static void carry(long[] h) {
+    carry(h, h[0], h[1], h[2], h[3], h[4], h[5], h[6], h[7], h[8], h[9]);
+  }
+
+  // Reduces each limb to its 26 or 25 bits (plus sign), folding the top carry back in times 19
+  private static void carry(
+      long[] h, long h0, long h1, long h2, long h3, long h4, long h5, long h6, long h7, long h8,
+      long h9) {
+
+    long c;
+    c = (h0 + (1L << 25)) >> 26;
+    h1 += c;
+    h0 -= c << 26;
+    c = (h4 + (1L << 25)) >> 26;
+    h5 += c;
+    h4 -= c << 26;
+    c = (h1 + (1L << 24)) >> 25;
+    h2 += c;
+    h1 -= c << 25;
+    c = (h5 + (1L << 24)) >> 25;
+    h6 += c;
+    h5 -= c << 25;
+    c = (h2 + (1L << 25)) >> 26;
+    h3 += c;
+    h2 -= c << 26;
+    c = (h6 + (1L << 25)) >> 26;
+    h7 += c;
+    h6 -= c << 26;
+    c = (h3 + (1L << 24)) >> 25;
+    h4 += c;
+    h3 -= c << 25;
+    c = (h7 + (1L << 24)) >> 25;
+    h8 += c;
+    h7 -= c << 25;
+    c = (h4 + (1L << 25)) >> 26;
+    h5 += c;
+    h4 -= c << 26;
+    c = (h8 + (1L << 25)) >> 26;
+    h9 += c;
+    h8 -= c << 26;
+    c = (h9 + (1L << 24)) >> 25;
+    h0 += c * 19;
+    h9 -= c << 25;
+    c = (h0 + (1L << 25)) >> 26;
+    h1 += c;
+    h0 -= c << 26;
+
+    h[0] = h0;
+    h[1] = h1;
+    h[2] = h2;
+    h[3] = h3;
+    h[4] = h4;
+    h[5] = h5;
+    h[6] = h6;
+    h[7] = h7;
+    h[8] = h8;
+    h[9] = h9;
+  }
+
+  private static long load3(byte[] s, int i) {
+    return (s[i] & 0xffL) | ((s[i + 1] & 0xffL) << 8) | ((s[i + 2] & 0xffL) << 16);
+  }
+
+  private static long load4(byte[] s, int i) {
+    return load3(s, i) | ((s[i + 3] & 0xffL) << 24);
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+/**
+ * Arithmetic on scalars, integers modulo the group order L = 2^252 +
+ * 27742317777372353535851937790883648493, for {@link Ed25519Engine}. Scalars are 32 bytes,
+ * little-endian.
+ */
+/*package*/ final class Ed25519Scalar {
+
+  /*package*/ static final int REDUCE_SCRATCH_LIMBS = 24;
+
+  private static final int LIMB_BITS = 21;
+  private static final long LIMB_MASK = (1L << LIMB_BITS) - 1;
+
+  // L, little-endian
+  private static final byte[] ORDER = {
+      (byte) 0xed, (byte) 0xd3, (byte) 0xf5, (byte) 0x5c, (byte) 0x1a, (byte) 0x63, (byte) 0x12,
+      (byte) 0x58, (byte) 0xd6, (byte) 0x9c, (byte) 0xf7, (byte) 0xa2, (byte) 0xde, (byte) 0xf9,
+      (byte) 0xde, (byte) 0x14, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0x10
+  };
+
+  // 2^252 mod L, as signed 21-bit limbs; multiplying a limb at weight 2^(21(i+12)) by these and
+  // adding the products at weights 2^(21i)..2^(21(i+5)) leaves the value unchanged mod L
+  private static final long[] FOLD = {666643, 470296, 654183, -997805, 136657, -683901};
+
+  private Ed25519Scalar() {
+  }
+
+  /**
+   * @return {@code True} if the scalar at {@code s[offset..offset+32)} is less than L, as RFC 8032
+   * requires of the S half of a signature
+   */
+  /*package*/ static boolean isReduced(byte[] s, int offset) {
+    for (int i = 31; i >= 0; i--) {
+      int si = s[offset + i] & 0xff;
+      int li = ORDER[i] & 0xff;
+      if (si != li) {
+        return si < li;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reduces the 64-byte little-endian integer {@code in} modulo L into the 32-byte {@code out},
+   * using {@code t}, a long[{@link #REDUCE_SCRATCH_LIMBS}], as scratch space. This follows
+   * ref10's {@code sc_reduce}.
+   */
+  /*package*/ static void reduce(byte[] out, byte[] in, long[] t) {
+    for (int i = 0; i < REDUCE_SCRATCH_LIMBS; i++) {
+      int bit = i * LIMB_BITS;
+      long bits = 0;
+      for (int b = 3; b >= 0; b--) {
+        int index = (bit >>> 3) + b;
+        bits = (bits << 8) | (index < in.length ? in[index] & 0xff : 0);
+      }
+      bits >>>= bit & 7;
+      t[i] = (i < REDUCE_SCRATCH_LIMBS - 1) ? bits & LIMB_MASK : bits;
+    }
+
+    for (int i = 23; i >= 18; i--) {
+      fold(t, i);
+    }
+    carryRounded(t, 6, 17);
+    carryRounded(t, 7, 16);
+
+    for (int i = 17; i >= 12; i--) {
+      fold(t, i);
+    }
+    carryRounded(t, 0, 11);
+    carryRounded(t, 1, 12);
+
+    fold(t, 12);
+    carry(t, 11);
+    fold(t, 12);
+    carry(t, 10);
+
+    long acc = 0;
+    int accBits = 0;
+    int pos = 0;
+    for (int i = 0; i < 12; i++) {
+      acc |= t[i] << accBits;
+      accBits += LIMB_BITS;
+      while (accBits >= 8 && pos < 32) {
+        out[pos++] = (byte) acc;
+        acc >>>= 8;
+        accBits -= 8;
+      }
+    }
+    out[pos] = (byte) acc;
+  }
+
+  /**
+   * Writes the sliding-window recoding of the scalar at {@code s[offset..offset+32)} to {@code
+   * r}, a byte[256]: {@code sum(r[i] * 2^i)} equals the scalar, and every non-zero {@code r[i]} is
+   * odd, at most {@code maxDigit} in magnitude, and followed by enough zeros that a window of
+   * precomputed odd multiples serves each digit. This follows ref10's {@code slide}.
+   */
+  /*package*/ static void slide(byte[] r, byte[] s, int offset, int maxDigit) {
+    for (int i = 0; i < 256; i++) {
+      r[i] = (byte) (1 & (s[offset + (i >> 3)] >> (i & 7)));
+    }
+
+    for (int i = 0; i < 256; i++) {
+      if (r[i] == 0) {
+        continue;
+      }
+      for (int b = 1; b <= 8 && i + b < 256; b++) {
+        if (r[i + b] == 0) {
+          continue;
+        }
+        int shifted = r[i + b] << b;
+        if (r[i] + shifted <= maxDigit) {
+          r[i] += shifted;
+          r[i + b] = 0;
+        } else if (r[i] - shifted >= -maxDigit) {
+          r[i] -= shifted;
+          for (int k = i + b; k < 256; k++) {
+            if (r[k] == 0) {
+              r[k] = 1;
+              break;
+            }
+            r[k] = 0;
+          }
+        } else {
+          break;
+        }
+      }
+    }
+  }
+
+  // Folds limb i down to limbs i-12..i-7
+  private static void fold(long[] t, int i) {
+    long c = t[i];
+    t[i] = 0;
+    for (int j = 0; j < FOLD.length; j++) {
+      t[i - 12 + j] += c * FOLD[j];
+    }
+  }
+
+  // Rounded carries out of every other limb from 'from' up to 'to'
+  private static void carryRounded(long[] t, int from, int to) {
+    for (int i = from; i <= to; i += 2) {
+      long c = (t[i] + (1L << (LIMB_BITS - 1))) >> LIMB_BITS;
+      t[i + 1] += c;
+      t[i] -= c << LIMB_BITS;
+    }
+  }
+
+  // Carries out of each limb in turn from 0 up to 'to'
+  private static void carry(long[] t, int to) {
+    for (int i = 0; i <= to; i++) {
+      long c = t[i] >> LIMB_BITS;
+      t[i + 1] += c;
+      t[i] -= c << LIMB_BITS;
+    }
+  }
+}
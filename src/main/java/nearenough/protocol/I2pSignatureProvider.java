@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import net.i2p.crypto.eddsa.EdDSAPrivateKey;
+import net.i2p.crypto.eddsa.spec.EdDSAPrivateKeySpec;
+
+/**
+ * Ed25519 signatures by the {@code net.i2p.crypto:eddsa} library. Always available.
+ */
+/*package*/ final class I2pSignatureProvider implements RtSignatureProvider {
+
+  @Override
+  public String name() {
+    return "i2p";
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public Signature newSigner(byte[] seed) throws InvalidKeyException {
+    Signature signer = new EdDSAEngine(RtHashing.newSha512());
+    signer.initSign(privateKey(seed));
+    return signer;
+  }
+
+  @Override
+  public byte[] publicKey(byte[] seed) {
+    return privateKey(seed).getAbyte();
+  }
+
+  @Override
+  public Signature newVerifier(byte[] publicKey) throws InvalidKeyException {
+    Signature verifier = new EdDSAEngine(RtHashing.newSha512());
+    verifier.initVerify(RtEd25519.decodePublicKey(publicKey));
+    return verifier;
+  }
+
+  private static EdDSAPrivateKey privateKey(byte[] seed) {
+    return new EdDSAPrivateKey(new EdDSAPrivateKeySpec(seed, RtEd25519.ED25519_SPEC));
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.util.Preconditions.checkArgument;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Ed25519 signatures by the JDK's {@code Ed25519} algorithm, available from Java 15.
+ * <p>
+ * Keys are exchanged with the JDK in their standard X.509 and PKCS#8 encodings, so this class
+ * compiles against Java 8 and simply reports itself unavailable on JVMs that lack the algorithm.
+ * The JDK has no API deriving a public key from a private one, so public keys are derived by the
+ * {@code "i2p"} provider.
+ */
+/*package*/ final class JdkSignatureProvider implements RtSignatureProvider {
+
+  private static final String ALGORITHM = "Ed25519";
+
+  // DER encodings of SubjectPublicKeyInfo and PrivateKeyInfo for Ed25519 (RFC 8410), less the
+  // trailing 32-byte key
+  private static final byte[] X509_PREFIX = {
+      0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+  };
+  private static final byte[] PKCS8_PREFIX = {
+      0x30, 0x2e, 0x02, 0x01, 0x00, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x04, 0x22, 0x04, 0x20
+  };
+
+  private static final boolean AVAILABLE = probe();
+
+  private static final RtSignatureProvider KEY_DERIVATION = new I2pSignatureProvider();
+
+  private static boolean probe() {
+    try {
+      Signature.getInstance(ALGORITHM);
+      KeyFactory.getInstance(ALGORITHM);
+      return true;
+    } catch (NoSuchAlgorithmException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public String name() {
+    return "jdk";
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  @Override
+  public Signature newSigner(byte[] seed) throws InvalidKeyException {
+    checkArgument(seed.length == 32, "seed length is wrong");
+
+    try {
+      KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+      Signature signer = Signature.getInstance(ALGORITHM);
+      PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(concat(PKCS8_PREFIX, seed));
+      signer.initSign(keyFactory.generatePrivate(spec));
+      return signer;
+    } catch (InvalidKeyException e) {
+      throw e;
+    } catch (GeneralSecurityException e) {
+      throw new InvalidKeyException(e);
+    }
+  }
+
+  @Override
+  public byte[] publicKey(byte[] seed) throws InvalidKeyException {
+    checkArgument(seed.length == 32, "seed length is wrong");
+
+    return KEY_DERIVATION.publicKey(seed);
+  }
+
+  @Override
+  public Signature newVerifier(byte[] publicKey) throws InvalidKeyException {
+    try {
+      KeyFactory keyFactory = KeyFactory.getInstance(ALGORITHM);
+      Signature verifier = Signature.getInstance(ALGORITHM);
+      X509EncodedKeySpec spec = new X509EncodedKeySpec(concat(X509_PREFIX, publicKey));
+      verifier.initVerify(keyFactory.generatePublic(spec));
+      return verifier;
+    } catch (InvalidKeyException e) {
+      throw e;
+    } catch (GeneralSecurityException e) {
+      throw new InvalidKeyException(e);
+    }
+  }
+
+  private static byte[] concat(byte[] prefix, byte[] key) {
+    byte[] encoded = Arrays.copyOf(prefix, prefix.length + key.length);
+    System.arraycopy(key, 0, encoded, prefix.length, key.length);
+    return encoded;
+  }
+}
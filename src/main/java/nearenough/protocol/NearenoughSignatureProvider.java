@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import java.security.InvalidKeyException;
+import java.security.Signature;
+
+/**
+ * Ed25519 verification by this library's own {@link Ed25519Engine}. Always available.
+ * <p>
+ * Roughtime clients only verify, so signing is delegated to the {@code "i2p"} provider.
+ */
+/*package*/ final class NearenoughSignatureProvider implements RtSignatureProvider {
+
+  private final RtSignatureProvider signing = new I2pSignatureProvider();
+
+  @Override
+  public String name() {
+    return "nearenough";
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  public Signature newSigner(byte[] seed) throws InvalidKeyException {
+    return signing.newSigner(seed);
+  }
+
+  @Override
+  public byte[] publicKey(byte[] seed) throws InvalidKeyException {
+    return signing.publicKey(seed);
+  }
+
+  @Override
+  public Signature newVerifier(byte[] publicKey) throws InvalidKeyException {
+    return new Ed25519Engine(Ed25519Engine.decodePublicKey(publicKey));
+  }
+}
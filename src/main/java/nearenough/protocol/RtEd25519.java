@@ -17,52 +17,203 @@ package nearenough.protocol;
 
 import static nearenough.protocol.RtConstants.MIN_SEED_LENGTH;
 import static nearenough.protocol.RtConstants.PUBKEY_LENGTH;
+import static nearenough.protocol.RtConstants.SIGNATURE_LENGTH;
 import static nearenough.util.Preconditions.checkArgument;
+import static nearenough.util.Preconditions.checkNotNull;
+import static nearenough.util.Preconditions.checkState;
 
-import net.i2p.crypto.eddsa.EdDSAEngine;
-import net.i2p.crypto.eddsa.EdDSAPrivateKey;
 import net.i2p.crypto.eddsa.EdDSAPublicKey;
+import net.i2p.crypto.eddsa.math.GroupElement;
+import net.i2p.crypto.eddsa.math.ScalarOps;
 import net.i2p.crypto.eddsa.spec.EdDSANamedCurveTable;
 import net.i2p.crypto.eddsa.spec.EdDSAParameterSpec;
-import net.i2p.crypto.eddsa.spec.EdDSAPrivateKeySpec;
 import net.i2p.crypto.eddsa.spec.EdDSAPublicKeySpec;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
-import java.security.PublicKey;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.ServiceLoader;
 
 /**
  * Provides Ed25519 signing and verification.
+ * <p>
+ * Signatures are made and checked by a {@link RtSignatureProvider}, chosen once per JVM as
+ * described in {@link #provider()}.
  */
 public final class RtEd25519 {
 
-  private static final EdDSAParameterSpec ED25519_SPEC = EdDSANamedCurveTable.getByName(
+  /*package*/ static final EdDSAParameterSpec ED25519_SPEC = EdDSANamedCurveTable.getByName(
       EdDSANamedCurveTable.ED_25519
   );
 
+  /**
+   * Maximum number of decoded public keys retained. Each client verifies against one long-term key
+   * per server and a delegated key that changes rarely, so this covers many servers.
+   */
+  public static final int KEY_CACHE_SIZE = 64;
+
+  // Decoded public keys, least recently used first, keyed by their 32-byte encoding. Decoding
+  // decompresses the curve point and precomputes tables, which is most of the cost of a
+  // Verifier. One cache serves both the "i2p" and "nearenough" providers, so a key counts once
+  // against the bound whichever of them decoded it.
+  private static final Map<ByteBuffer, DecodedKeys> KEY_CACHE =
+      new LinkedHashMap<ByteBuffer, DecodedKeys>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, DecodedKeys> eldest) {
+          return size() > KEY_CACHE_SIZE;
+        }
+      };
+
+  /**
+   * The forms of one public key decoded so far by each provider. Both are immutable and safe to
+   * share between threads; racing threads may both decode a key, which is harmless.
+   */
+  /*package*/ static final class DecodedKeys {
+
+    /*package*/ volatile EdDSAPublicKey i2p;
+    /*package*/ volatile Ed25519Engine.DecodedKey nearenough;
+  }
+
+  /**
+   * @return The decoded forms of {@code publicKeyBytes} in the cache, or {@code null} if it has not
+   * been decoded recently
+   */
+  /*package*/ static DecodedKeys cachedKeys(byte[] publicKeyBytes) {
+    synchronized (KEY_CACHE) {
+      return KEY_CACHE.get(ByteBuffer.wrap(publicKeyBytes));
+    }
+  }
+
+  /**
+   * @return The cache entry for {@code publicKeyBytes}, added if absent. Only called once a key has
+   * decoded successfully, so invalid keys never displace valid ones.
+   */
+  /*package*/ static DecodedKeys cacheKeys(byte[] publicKeyBytes) {
+    synchronized (KEY_CACHE) {
+      DecodedKeys keys = KEY_CACHE.get(ByteBuffer.wrap(publicKeyBytes));
+      if (keys == null) {
+        keys = new DecodedKeys();
+        KEY_CACHE.put(ByteBuffer.wrap(publicKeyBytes.clone()), keys);
+      }
+      return keys;
+    }
+  }
+
+  /**
+   * @return The decoded form of {@code publicKeyBytes}, from the cache if it was decoded recently
+   */
+  /*package*/ static EdDSAPublicKey decodePublicKey(byte[] publicKeyBytes) {
+    DecodedKeys cached = cachedKeys(publicKeyBytes);
+    if (cached != null && cached.i2p != null) {
+      return cached.i2p;
+    }
+
+    byte[] copy = publicKeyBytes.clone();
+    EdDSAPublicKey decoded = new EdDSAPublicKey(new EdDSAPublicKeySpec(copy, ED25519_SPEC));
+    cacheKeys(copy).i2p = decoded;
+    return decoded;
+  }
+
+  /**
+   * System property naming the {@link RtSignatureProvider} to use, for example {@code "i2p"} or
+   * {@code "jdk"}.
+   */
+  public static final String PROVIDER_PROPERTY = "nearenough.ed25519.provider";
+
+  // Selected on first use rather than during class initialization, so that a misconfigured
+  // property fails each use with a clear message instead of leaving the class unusable
+  private static volatile RtSignatureProvider defaultProvider;
+
+  /**
+   * Returns the provider used by {@link Signer}s and {@link Verifier}s that are not given one
+   * explicitly.
+   * <p>
+   * If the {@link #PROVIDER_PROPERTY} system property is set, the provider of that name is used,
+   * and it is an error for it to be unknown or unavailable. Otherwise the first available of the
+   * built-in {@code "nearenough"}, {@code "i2p"} and {@code "jdk"} providers is used, in that
+   * order: the first verifies fastest and without allocating, and the second signs fastest.
+   *
+   * @return The default {@link RtSignatureProvider}
+   * @throws IllegalStateException if the property names a provider that is unknown or unavailable
+   */
+  public static RtSignatureProvider provider() {
+    RtSignatureProvider result = defaultProvider;
+    if (result == null) {
+      result = selectProvider(System.getProperty(PROVIDER_PROPERTY), providers());
+      defaultProvider = result;
+    }
+    return result;
+  }
+
+  /**
+   * @return The built-in providers in order of preference, followed by any registered with
+   * {@link ServiceLoader}, whether or not they are available
+   */
+  public static List<RtSignatureProvider> providers() {
+    List<RtSignatureProvider> providers = new ArrayList<>();
+    providers.add(new NearenoughSignatureProvider());
+    providers.add(new I2pSignatureProvider());
+    providers.add(new JdkSignatureProvider());
+    for (RtSignatureProvider provider : ServiceLoader.load(RtSignatureProvider.class)) {
+      providers.add(provider);
+    }
+    return providers;
+  }
+
+  /*package*/ static RtSignatureProvider selectProvider(
+      String requested, List<RtSignatureProvider> candidates) {
+
+    for (RtSignatureProvider candidate : candidates) {
+      if (requested == null ? candidate.isAvailable() : candidate.name().equals(requested)) {
+        checkState(candidate.isAvailable(), "Ed25519 provider '%s' is not available", requested);
+        return candidate;
+      }
+    }
+
+    checkState(requested == null, "unknown Ed25519 provider '%s'", requested);
+    throw new IllegalStateException("no Ed25519 provider is available");
+  }
+
   /**
    * Sign byte-strings using the private key derived from the provided <em>seed</em>.
    */
   public static final class Signer {
 
     private final Signature signer;
-    private final EdDSAPrivateKey privateKey;
+    private final byte[] publicKey;
 
     /**
      * Sign byte-strings using the private key derived from the provided <em>seed</em>.
      *
-     * @param seedBytes A <em>seed</em> to create a private key. Not the actual private key. The
-     * seed will be transformed and expanded into an Ed25519 private key as described in <a
-     * href="https://tools.ietf.org/html/rfc8032#page-13">RFC 8032</a>.
+     * @param seedBytes A 32 byte <em>seed</em> to create a private key. Not the actual private
+     * key. The seed will be transformed and expanded into an Ed25519 private key as described in
+     * <a href="https://tools.ietf.org/html/rfc8032#page-13">RFC 8032</a>.
      */
     public Signer(byte[] seedBytes) throws InvalidKeyException {
+      this(seedBytes, provider());
+    }
+
+    /**
+     * Sign byte-strings using the private key derived from the provided <em>seed</em>, with
+     * signatures made by {@code provider}.
+     */
+    public Signer(byte[] seedBytes, RtSignatureProvider provider) throws InvalidKeyException {
       checkArgument(seedBytes.length >= MIN_SEED_LENGTH, "insufficient private key seed length");
+      checkArgument(seedBytes.length == MIN_SEED_LENGTH, "seed length is wrong");
+      checkNotNull(provider, "provider");
 
-      EdDSAPrivateKeySpec privateSpec = new EdDSAPrivateKeySpec(seedBytes, ED25519_SPEC);
-      this.privateKey = new EdDSAPrivateKey(privateSpec);
-      this.signer = new EdDSAEngine(RtHashing.newSha512());
-      signer.initSign(privateKey);
+      this.signer = provider.newSigner(seedBytes);
+      this.publicKey = provider.publicKey(seedBytes);
     }
 
     /**
@@ -91,7 +242,7 @@ public final class RtEd25519 {
      * @return The Ed2519 public key corresponding to the private key derived from the initial seed.
      */
     public byte[] getPubKey() {
-      return privateKey.getAbyte();
+      return publicKey.clone();
     }
   }
 
@@ -103,18 +254,27 @@ public final class RtEd25519 {
     private final Signature verifier;
 
     /**
-     * Verify the Ed25519 signature of byte-strings using the provided public key.
+     * Verify the Ed25519 signature of byte-strings using the provided public key. With the {@code
+     * "nearenough"} and {@code "i2p"} providers the decoded key is shared with other verifiers of
+     * the same key through a cache of {@link #KEY_CACHE_SIZE} entries, so constructing a verifier
+     * for a recently used key does not decode it again.
      *
      * @param publicKeyBytes A byte[32] containing the Ed25519 public key to use for verifications.
      */
     public Verifier(byte[] publicKeyBytes) throws InvalidKeyException {
-      checkArgument(publicKeyBytes.length == PUBKEY_LENGTH, "incorrect public key size");
+      this(publicKeyBytes, provider());
+    }
 
-      EdDSAPublicKeySpec publicSpec = new EdDSAPublicKeySpec(publicKeyBytes, ED25519_SPEC);
-      PublicKey publicKey = new EdDSAPublicKey(publicSpec);
+    /**
+     * Verify the Ed25519 signature of byte-strings using the provided public key, with signatures
+     * checked by {@code provider}.
+     */
+    public Verifier(byte[] publicKeyBytes, RtSignatureProvider provider)
+        throws InvalidKeyException {
+      checkArgument(publicKeyBytes.length == PUBKEY_LENGTH, "incorrect public key size");
+      checkNotNull(provider, "provider");
 
-      this.verifier = new EdDSAEngine(RtHashing.newSha512());
-      verifier.initVerify(publicKey);
+      this.verifier = provider.newVerifier(publicKeyBytes);
     }
 
     /**
@@ -140,4 +300,344 @@ public final class RtEd25519 {
       return verifier.verify(signature);
     }
   }
+
+  /**
+   * Verify many independent Ed25519 signatures together, substantially faster than verifying each
+   * with a {@link Verifier}.
+   * <p>
+   * Each signature (R, S) by key A on message M satisfies {@code [S]B = R + [H(R,A,M)]A}. Rather
+   * than check every equation separately, a random linear combination of all of them is checked
+   * with a single multi-scalar multiplication, which shares the point doublings across the batch.
+   * Signatures made under the same key share that key's term. Should the combined check fail,
+   * every signature is verified individually to identify the invalid ones.
+   * <p>
+   * The combined equation is multiplied by the cofactor (8), as permitted by <a
+   * href="https://tools.ietf.org/html/rfc8032#section-5.1.7">RFC 8032</a>. Signatures crafted
+   * with small-order components may therefore be accepted in a batch yet rejected by a {@link
+   * Verifier}; honestly generated signatures verify identically either way.
+   * <p>
+   * Instances are not thread-safe.
+   */
+  public static final class BatchVerifier {
+
+    // Batches smaller than this are verified individually, which is faster at that size
+    private static final int MIN_BATCH_SIZE = 8;
+
+    private static final GroupElement BASE_POINT = ED25519_SPEC.getB();
+    private static final GroupElement IDENTITY = ED25519_SPEC.getCurve().getZero(
+        GroupElement.Representation.P3
+    );
+    private static final ScalarOps SCALAR_OPS = ED25519_SPEC.getScalarOps();
+
+    private static final byte[] ZERO_SCALAR = new byte[32];
+
+    // Group order L minus one, little-endian; multiplying by it negates a scalar
+    private static final byte[] ORDER_MINUS_ONE = {
+        (byte) 0xec, (byte) 0xd3, (byte) 0xf5, (byte) 0x5c, (byte) 0x1a, (byte) 0x63, (byte) 0x12,
+        (byte) 0x58, (byte) 0xd6, (byte) 0x9c, (byte) 0xf7, (byte) 0xa2, (byte) 0xde, (byte) 0xf9,
+        (byte) 0xde, (byte) 0x14, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0x10
+    };
+
+    // Bytes of randomness in each signature's coefficient, giving a 2^-128 chance of accepting a
+    // batch that contains an invalid signature
+    private static final int COEFFICIENT_LENGTH = 16;
+
+    private final MessageDigest digest = RtHashing.newSha512();
+    private final Random random;
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<EdDSAPublicKey, Integer> keyIndexes = new HashMap<>();
+    private final List<EdDSAPublicKey> keys = new ArrayList<>();
+
+    // A signature awaiting verification. S is null if the signature fails without being checked
+    // because the default Verifier rejects it: S is not below L, or the public key is not
+    // canonically encoded.
+    private static final class Entry {
+
+      private final int keyIndex;
+      private final byte[] r;
+      private final byte[] s;
+      private final byte[] h;
+
+      private Entry(int keyIndex, byte[] r, byte[] s, byte[] h) {
+        this.keyIndex = keyIndex;
+        this.r = r;
+        this.s = s;
+        this.h = h;
+      }
+    }
+
+    /**
+     * Creates an empty batch using {@link SecureRandom} to choose the combination's coefficients.
+     */
+    public BatchVerifier() {
+      this(new SecureRandom());
+    }
+
+    /**
+     * Creates an empty batch using {@code random} to choose the combination's coefficients. An
+     * adversary able to predict the coefficients can construct batches that wrongly verify, so
+     * {@code random} must be cryptographically secure.
+     */
+    public BatchVerifier(Random random) {
+      this.random = checkNotNull(random, "random");
+    }
+
+    /**
+     * Adds a signature to the batch. As with {@link Verifier}, a signature whose S is not below
+     * the group order, as RFC 8032 requires, or whose public key is not canonically encoded, is
+     * invalid.
+     *
+     * @param publicKeyBytes A byte[32] containing the Ed25519 public key of the signer
+     * @param signature byte[64] of Ed25519 signature
+     * @param content The signed message, as the sequence of byte arrays that {@link
+     * Verifier#update(byte[])} would be called with
+     * @return The position of this signature in the results of {@link #verify()}
+     */
+    public int add(byte[] publicKeyBytes, byte[] signature, byte[]... content) {
+      checkArgument(publicKeyBytes.length == PUBKEY_LENGTH, "incorrect public key size");
+      checkArgument(signature.length == SIGNATURE_LENGTH, "incorrect signature size");
+
+      // The i2p decoder reduces y modulo p, so check the encoding as the default Verifier does
+      if (!isCanonical(publicKeyBytes)) {
+        entries.add(new Entry(-1, null, null, null));
+        return entries.size() - 1;
+      }
+
+      EdDSAPublicKey key = decodePublicKey(publicKeyBytes);
+      Integer keyIndex = keyIndexes.get(key);
+      if (keyIndex == null) {
+        keyIndex = keys.size();
+        keyIndexes.put(key, keyIndex);
+        keys.add(key);
+      }
+
+      byte[] r = Arrays.copyOfRange(signature, 0, 32);
+      byte[] s = Ed25519Scalar.isReduced(signature, 32)
+          ? Arrays.copyOfRange(signature, 32, 64)
+          : null;
+
+      digest.update(r);
+      digest.update(key.getAbyte());
+      for (byte[] part : content) {
+        digest.update(part);
+      }
+      byte[] h = SCALAR_OPS.reduce(digest.digest());
+
+      entries.add(new Entry(keyIndex, r, s, h));
+      return entries.size() - 1;
+    }
+
+    /**
+     * @return The number of signatures in the batch
+     */
+    public int size() {
+      return entries.size();
+    }
+
+    /**
+     * Verifies every signature in the batch, then empties the batch so it may be reused.
+     *
+     * @return An array with one element per signature, in the order they were added, that is
+     * {@code true} if the signature is valid and {@code false} otherwise
+     */
+    public boolean[] verify() {
+      try {
+        boolean[] results = new boolean[entries.size()];
+
+        if (entries.size() >= MIN_BATCH_SIZE && verifyCombined()) {
+          for (int i = 0; i < results.length; i++) {
+            results[i] = entries.get(i).s != null;
+          }
+        } else {
+          for (int i = 0; i < results.length; i++) {
+            results[i] = verifySingle(entries.get(i));
+          }
+        }
+        return results;
+      } finally {
+        entries.clear();
+        keyIndexes.clear();
+        keys.clear();
+      }
+    }
+
+    // Checks [8]([-sum(z_i * S_i)]B + sum([z_i]R_i) + sum([sum(z_i * h_i)]A)) is the identity,
+    // leaving out signatures that fail without being checked
+    private boolean verifyCombined() {
+      int count = entries.size() + keys.size() + 1;
+      GroupElement[] points = new GroupElement[count];
+      byte[][] scalars = new byte[count][];
+
+      byte[] baseScalar = ZERO_SCALAR;
+      byte[][] keyScalars = new byte[keys.size()][];
+      Arrays.fill(keyScalars, ZERO_SCALAR);
+
+      for (int i = 0; i < entries.size(); i++) {
+        Entry entry = entries.get(i);
+        if (entry.s == null) {
+          points[i] = IDENTITY;
+          scalars[i] = ZERO_SCALAR;
+          continue;
+        }
+
+        GroupElement r = decodeCanonical(entry.r);
+        if (r == null) {
+          return false;
+        }
+
+        byte[] z = new byte[32];
+        random.nextBytes(z);
+        Arrays.fill(z, COEFFICIENT_LENGTH, z.length, (byte) 0);
+
+        points[i] = r;
+        scalars[i] = z;
+        baseScalar = SCALAR_OPS.multiplyAndAdd(z, entry.s, baseScalar);
+        keyScalars[entry.keyIndex] = SCALAR_OPS.multiplyAndAdd(
+            z, entry.h, keyScalars[entry.keyIndex]
+        );
+      }
+
+      for (int k = 0; k < keys.size(); k++) {
+        points[entries.size() + k] = keys.get(k).getA();
+        scalars[entries.size() + k] = keyScalars[k];
+      }
+
+      points[count - 1] = BASE_POINT;
+      scalars[count - 1] = SCALAR_OPS.multiplyAndAdd(baseScalar, ORDER_MINUS_ONE, ZERO_SCALAR);
+
+      GroupElement sum = multiScalarMultiply(points, scalars);
+      GroupElement cleared = sum.dbl().toP2().dbl().toP2().dbl().toP3();
+
+      return !cleared.getX().isNonZero() && !cleared.getY().subtract(cleared.getZ()).isNonZero();
+    }
+
+    // Same computation as EdDSAEngine: encode [S]B - [h]A and compare it with R
+    private boolean verifySingle(Entry entry) {
+      if (entry.s == null) {
+        return false;
+      }
+
+      EdDSAPublicKey key = keys.get(entry.keyIndex);
+      byte[] computed = BASE_POINT
+          .doubleScalarMultiplyVariableTime(key.getNegativeA(), entry.h, entry.s)
+          .toByteArray();
+
+      return MessageDigest.isEqual(computed, entry.r);
+    }
+
+    // Decodes R, or returns null if it is not the canonical encoding of a curve point; the
+    // individual check compares encodings, so such signatures can only fail it
+    private static GroupElement decodeCanonical(byte[] encoded) {
+      if (!isCanonical(encoded)) {
+        return null;
+      }
+
+      try {
+        return new GroupElement(ED25519_SPEC.getCurve(), encoded);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+
+    // True unless the encoding is non-canonical in the ways Ed25519Engine rejects, whether or
+    // not it is a curve point
+    private static boolean isCanonical(byte[] encoded) {
+      boolean highBytesAllOnes = (encoded[31] & 0x7f) == 0x7f;
+      boolean highBytesAllZero = (encoded[31] & 0x7f) == 0;
+      for (int i = 1; i < 31; i++) {
+        highBytesAllOnes &= encoded[i] == (byte) 0xff;
+        highBytesAllZero &= encoded[i] == 0;
+      }
+      int low = encoded[0] & 0xff;
+      boolean signBit = (encoded[31] & 0x80) != 0;
+
+      // y >= p is non-canonical, as is a set sign bit when x is zero (y is 1 or p - 1)
+      if (highBytesAllOnes && (low >= 0xed || (signBit && low == 0xec))) {
+        return false;
+      }
+      return !(highBytesAllZero && signBit && low == 0x01);
+    }
+
+    // Computes sum([scalars[i]]points[i]) using Pippenger's bucket method with signed digits.
+    // Scalars are 32 bytes little-endian and below 2^253, points are in P3 representation.
+    private static GroupElement multiScalarMultiply(GroupElement[] points, byte[][] scalars) {
+      int width = windowWidth(points.length);
+      int windows = 256 / width + 1;
+      int half = 1 << (width - 1);
+
+      GroupElement[] cached = new GroupElement[points.length];
+      int[][] digits = new int[points.length][];
+      for (int i = 0; i < points.length; i++) {
+        cached[i] = points[i].toCached();
+        digits[i] = signedDigits(scalars[i], width, windows);
+      }
+
+      GroupElement result = null;
+      GroupElement[] buckets = new GroupElement[half + 1];
+
+      for (int window = windows - 1; window >= 0; window--) {
+        if (result != null) {
+          for (int i = 1; i < width; i++) {
+            result = result.dbl().toP2();
+          }
+          result = result.dbl().toP3();
+        }
+
+        Arrays.fill(buckets, null);
+        for (int i = 0; i < points.length; i++) {
+          int digit = digits[i][window];
+          if (digit != 0) {
+            int index = Math.abs(digit);
+            GroupElement bucket = (buckets[index] != null) ? buckets[index] : IDENTITY;
+            buckets[index] = (digit > 0 ? bucket.add(cached[i]) : bucket.sub(cached[i])).toP3();
+          }
+        }
+
+        // sum(j * buckets[j]) as a running sum of running sums
+        GroupElement running = null;
+        GroupElement total = null;
+        for (int j = half; j > 0; j--) {
+          if (buckets[j] != null) {
+            running = (running == null) ? buckets[j] : running.add(buckets[j].toCached()).toP3();
+          }
+          if (running != null) {
+            total = (total == null) ? running : total.add(running.toCached()).toP3();
+          }
+        }
+
+        if (total != null) {
+          result = (result == null) ? total : result.add(total.toCached()).toP3();
+        }
+      }
+
+      return (result != null) ? result : IDENTITY;
+    }
+
+    // Window width minimizing (256 / w) * (n + 2^(w-1)) point additions for n points
+    private static int windowWidth(int numPoints) {
+      int log2 = 31 - Integer.numberOfLeadingZeros(numPoints);
+      return Math.max(2, Math.min(log2 - 1, 12));
+    }
+
+    // Digits of the scalar in radix 2^width, each in [-2^(width-1), 2^(width-1))
+    private static int[] signedDigits(byte[] scalar, int width, int windows) {
+      int[] digits = new int[windows];
+      int mask = (1 << width) - 1;
+      int carry = 0;
+
+      for (int i = 0; i < windows; i++) {
+        int bit = i * width;
+        int bytes = 0;
+        for (int b = 2; b >= 0; b--) {
+          int index = (bit >>> 3) + b;
+          bytes = (bytes << 8) | (index < scalar.length ? scalar[index] & 0xff : 0);
+        }
+
+        int digit = ((bytes >>> (bit & 7)) & mask) + carry;
+        carry = (digit >= (1 << (width - 1))) ? 1 : 0;
+        digits[i] = digit - (carry << width);
+      }
+      return digits;
+    }
+  }
 }
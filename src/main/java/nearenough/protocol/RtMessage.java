@@ -15,34 +15,50 @@
 
 package nearenough.protocol;
 
+import static nearenough.protocol.RtConstants.MIN_REQUEST_LENGTH;
+import static nearenough.util.Preconditions.checkArgument;
 import static nearenough.util.Preconditions.checkNotNull;
+import static nearenough.util.Preconditions.checkPositionIndexes;
 import static nearenough.util.Preconditions.checkState;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.Map;
-import nearenough.protocol.exceptions.InvalidNumTagsException;
-import nearenough.protocol.exceptions.MessageTooShortException;
-import nearenough.protocol.exceptions.MessageUnalignedException;
-import nearenough.protocol.exceptions.TagOffsetOverflowException;
-import nearenough.protocol.exceptions.TagOffsetUnalignedException;
-import nearenough.protocol.exceptions.TagsNotIncreasingException;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import nearenough.protocol.exceptions.InvalidValueLengthException;
+import nearenough.protocol.exceptions.MissingTagException;
+import nearenough.util.BytesUtil;
 
 /**
  * An immutable Roughtime protocol message.
  * <p>
  * Roughtime messages are a map of uint32's to arbitrary byte-strings.
+ * <p>
+ * A message is either <em>eager</em>, with every value copied out of the source at construction,
+ * or a zero-copy <em>view</em> created by {@link #view(ByteBuffer)} or {@link #view(ByteBuf)} that
+ * keeps only the validated offsets table and the source buffer. Views must be {@link #close()
+ * closed}, which releases the retained slice of a {@code ByteBuf} source.
+ * <p>
+ * Parsing rejects tags this implementation does not recognize, unless the message is created by
+ * one of the factories accepting {@code skipUnknownTags}, in which case they are ignored and do
+ * not survive re-encoding. Nested messages should be parsed with the same setting as their
+ * parent, available from {@link #skipsUnknownTags()}.
+ * <p>
+ * Storage and parsing are based on {@link ByteBuffer} and {@code byte[]}. Methods accepting or
+ * returning Netty types are adapters, and only those require Netty on the classpath.
  *
  * @see <a href="https://roughtime.googlesource.com/roughtime">Roughtime project site</a> for the
  * specification and more details.
  */
-public final class RtMessage {
+public final class RtMessage implements AutoCloseable {
 
   public static RtMessageBuilder builder() {
     return new RtMessageBuilder();
@@ -53,56 +69,211 @@ public final class RtMessage {
    * contents of {@code srcBytes} must be a well-formed Roughtime message.
    */
   public static RtMessage fromBytes(byte[] srcBytes) {
+    return fromBytes(srcBytes, false);
+  }
+
+  /**
+   * As {@link #fromBytes(byte[])}, ignoring unknown tags if {@code skipUnknownTags} is true.
+   */
+  public static RtMessage fromBytes(byte[] srcBytes, boolean skipUnknownTags) {
     checkNotNull(srcBytes, "srcBytes");
 
-    ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(srcBytes.length);
-    buf.writeBytes(srcBytes);
-    return new RtMessage(buf);
+    return new RtMessage(ByteBuffer.wrap(srcBytes), null, false, skipUnknownTags);
   }
 
   /**
    * @return A new {@code RtMessage} by parsing the contents of the provided {@code ByteBuffer},
    * which can be direct or heap based. The contents of {@code srcBuf} must be a well-formed
-   * Roughtime message.
+   * Roughtime message. The position of {@code srcBuf} is advanced to its limit.
    */
   public static RtMessage fromByteBuffer(ByteBuffer srcBuf) {
+    return fromByteBuffer(srcBuf, false);
+  }
+
+  /**
+   * As {@link #fromByteBuffer(ByteBuffer)}, ignoring unknown tags if {@code skipUnknownTags} is
+   * true.
+   */
+  public static RtMessage fromByteBuffer(ByteBuffer srcBuf, boolean skipUnknownTags) {
     checkNotNull(srcBuf, "srcBuf");
 
-    ByteBuf buf = ByteBufAllocator.DEFAULT.buffer(srcBuf.remaining());
-    buf.writeBytes(srcBuf);
-    return new RtMessage(buf);
+    RtMessage msg = new RtMessage(srcBuf, null, false, skipUnknownTags);
+    srcBuf.position(srcBuf.limit());
+    return msg;
   }
 
-  private final int numTags;
-  private final Map<RtTag, byte[]> map;
+  /**
+   * Create a zero-copy view of the Roughtime message contained in the readable bytes of {@code
+   * msg}. The message is validated as thoroughly as {@link #RtMessage(ByteBuf)}, but values are
+   * not copied; instead the view retains a slice of {@code msg} and values are read from it on
+   * demand. The reader index of {@code msg} is not modified.
+   * <p>
+   * The caller must {@link #close()} the view when finished with it to release the slice.
+   *
+   * @return A new {@code RtMessage} view backed by {@code msg}
+   */
+  public static RtMessage view(ByteBuf msg) {
+    return view(msg, false);
+  }
 
   /**
-   * Create a new {@code RtMessage} by parsing the contents of the provided {@code ByteBuf}. The
-   * contents of {@code msg} must be a well-formed Roughtime message.
+   * As {@link #view(ByteBuf)}, ignoring unknown tags if {@code skipUnknownTags} is true.
    */
-  public RtMessage(ByteBuf msg) {
+  public static RtMessage view(ByteBuf msg, boolean skipUnknownTags) {
     checkNotNull(msg, "msg");
-    checkMessageLength(msg);
 
-    this.numTags = extractNumTags(msg);
-
-    if (numTags == 0) {
-      this.map = Collections.emptyMap();
-      return;
+    ByteBuf slice = msg.retainedSlice();
+    try {
+      return new RtMessage(slice.nioBuffer(0, slice.capacity()), slice, true, skipUnknownTags);
+    } catch (RuntimeException e) {
+      slice.release();
+      throw e;
     }
+  }
 
-    checkSufficientPayload(msg);
+  /**
+   * Create a zero-copy view of the Roughtime message contained in the remaining bytes of {@code
+   * msg}, which can be direct or heap based. The message is validated as thoroughly as {@link
+   * #fromByteBuffer(ByteBuffer)}, but values are not copied; instead they are read from the
+   * contents of {@code msg} on demand, which must not be modified while the view is in use. The
+   * position, limit, and byte order of {@code msg} are not modified.
+   *
+   * @return A new {@code RtMessage} view backed by the contents of {@code msg}
+   */
+  public static RtMessage view(ByteBuffer msg) {
+    return view(msg, false);
+  }
+
+  /**
+   * As {@link #view(ByteBuffer)}, ignoring unknown tags if {@code skipUnknownTags} is true.
+   */
+  public static RtMessage view(ByteBuffer msg, boolean skipUnknownTags) {
+    checkNotNull(msg, "msg");
 
-    if (numTags == 1) {
-      this.map = extractSingleMapping(msg);
+    return new RtMessage(msg.duplicate(), null, true, skipUnknownTags);
+  }
+
+  /**
+   * Create a zero-copy view of the Roughtime message occupying the {@code length} bytes of {@code
+   * src} starting at absolute {@code index}. The position, limit, and byte order of {@code src}
+   * are ignored and not modified. Otherwise as {@link #view(ByteBuffer, boolean)}.
+   * <p>
+   * Intended for parsing messages in place from large off-heap or memory-mapped storage, for
+   * example a {@link java.nio.MappedByteBuffer} of a file of archived responses, or on newer JDKs
+   * the {@code ByteBuffer} returned by {@code MemorySegment.asByteBuffer()}. Nothing is copied to
+   * the heap; the view holds only the validated offsets table.
+   *
+   * @return A new {@code RtMessage} view backed by the contents of {@code src}
+   */
+  public static RtMessage view(ByteBuffer src, int index, int length, boolean skipUnknownTags) {
+    checkNotNull(src, "src");
+    checkPositionIndexes(index, index + length, src.capacity());
+
+    ByteBuffer region = src.duplicate();
+    region.clear();
+    region.position(index);
+    region.limit(index + length);
+    return new RtMessage(region, null, true, skipUnknownTags);
+  }
+
+  // Source of zeros for virtual padding, which is always shorter than a minimum-length request.
+  // Never modified and only exposed through read-only wrappers.
+  private static final byte[] ZEROS = new byte[MIN_REQUEST_LENGTH];
+  private static final ByteBuffer ZEROS_NIO = ByteBuffer.wrap(ZEROS).asReadOnlyBuffer();
+
+  private final int numTags;
+
+  // Tags present in this message, in wire order
+  private final RtTag[] tags;
+
+  // Eager messages: values indexed by tag ordinal. Null for views.
+  private final byte[][] values;
+
+  // Views: a little-endian view of the message contents plus the index within it and length of
+  // each value, indexed by tag ordinal. An index of zero means the tag is absent. All null for
+  // eager messages.
+  private final ByteBuffer data;
+  private final int[] valueIndices;
+  private final int[] valueLengths;
+
+  // Views of a ByteBuf: the retained slice that data was obtained from. Null otherwise.
+  private final ByteBuf owner;
+
+  // Built messages: length of the all-zero PAD value, which is never materialized unless read
+  // through get() and friends. -1 when PAD, if present, is an ordinary value.
+  private final int paddingLength;
+
+  private final boolean skipsUnknownTags;
+
+  // Canonical wire encoding and hash of it, both computed on first use. Volatile so that the
+  // array's contents are visible to any thread that sees the reference.
+  private volatile byte[] encoded;
+  private int hash;
+
+  private boolean isClosed;
+
+  /**
+   * Create a new {@code RtMessage} by parsing the contents of the provided {@code ByteBuf}. The
+   * contents of {@code msg} must be a well-formed Roughtime message.
+   */
+  public RtMessage(ByteBuf msg) {
+    this(msg.nioBuffer(msg.readerIndex(), msg.readableBytes()), null, false, false);
+    msg.skipBytes(msg.readableBytes());
+  }
+
+  // Parse the remaining bytes of msg. A view takes ownership of msg, which must not be shared.
+  private RtMessage(ByteBuffer msg, ByteBuf owner, boolean isView, boolean skipUnknownTags) {
+    RtMessageReader reader = new RtMessageReader().skipUnknownTags(skipUnknownTags).reset(msg);
+
+    this.numTags = reader.numTags();
+    this.tags = reader.copyTags();
+    this.paddingLength = -1;
+    this.skipsUnknownTags = skipUnknownTags;
+
+    if (isView) {
+      this.values = null;
+      this.data = msg.order(ByteOrder.LITTLE_ENDIAN);
+      this.owner = owner;
+      this.valueIndices = new int[RtTag.COUNT];
+      this.valueLengths = new int[RtTag.COUNT];
+
+      for (int i = 0; i < numTags; i++) {
+        int ordinal = tags[i].ordinal();
+        valueIndices[ordinal] = reader.valueIndex(i);
+        valueLengths[ordinal] = reader.valueLength(i);
+      }
     } else {
-      this.map = extractMultiMapping(msg);
+      this.values = new byte[RtTag.COUNT][];
+      this.data = null;
+      this.owner = null;
+      this.valueIndices = null;
+      this.valueLengths = null;
+
+      for (int i = 0; i < numTags; i++) {
+        byte[] value = new byte[reader.valueLength(i)];
+        BytesUtil.getBytes(msg, reader.valueIndex(i), value, 0, value.length);
+        values[tags[i].ordinal()] = value;
+      }
     }
   }
 
   RtMessage(RtMessageBuilder builder) {
-    this.map = builder.mapping();
-    this.numTags = map.size();
+    this.numTags = builder.numTags();
+    this.tags = new RtTag[numTags];
+    this.values = builder.values().clone();
+    this.data = null;
+    this.owner = null;
+    this.valueIndices = null;
+    this.valueLengths = null;
+    this.paddingLength = builder.paddingLength();
+    this.skipsUnknownTags = false;
+
+    for (int i = 0, j = 0; i < RtTag.COUNT; i++) {
+      RtTag tag = RtTag.inWireOrder(i);
+      if (contains(tag)) {
+        tags[j++] = tag;
+      }
+    }
   }
 
   /**
@@ -113,119 +284,542 @@ public final class RtMessage {
   }
 
   /**
-   * @return The byte-string associated with {@code tag}, or {@code null} if no mapping exists.
+   * @return The byte-string associated with {@code tag}, or {@code null} if no mapping exists. If
+   * this message is a view the value is copied out of the backing buffer on each call. Likewise
+   * padding added by {@link RtMessageBuilder#addPadding} is only materialized when requested.
    */
   public byte[] get(RtTag tag) {
-    return map.get(tag);
+    if (!isView()) {
+      return isVirtualPadding(tag) ? new byte[paddingLength] : values[tag.ordinal()];
+    }
+
+    if (!contains(tag)) {
+      return null;
+    }
+
+    checkOpen();
+    byte[] value = new byte[valueLengths[tag.ordinal()]];
+    BytesUtil.getBytes(data, valueIndices[tag.ordinal()], value, 0, value.length);
+    return value;
   }
 
   /**
-   * @return The message's mapping.
+   * Read the value associated with {@code tag} as a little-endian uint32 directly from the
+   * message's storage, without allocating. The value is returned as the equivalent Java
+   * {@code int} bit pattern.
+   *
+   * @throws MissingTagException if no mapping exists for {@code tag}
+   * @throws InvalidValueLengthException if the value is not exactly 4 bytes long
    */
-  public Map<RtTag, byte[]> mapping() {
-    return map;
+  public int getUInt32LE(RtTag tag) {
+    checkValueLength(tag, 4);
+
+    if (isView()) {
+      checkOpen();
+      return data.getInt(valueIndices[tag.ordinal()]);
+    }
+    return BytesUtil.getIntLE(get(tag), 0);
   }
 
-  private int extractNumTags(ByteBuf msg) {
-    long readNumTags = msg.readUnsignedIntLE();
+  /**
+   * Read the value associated with {@code tag} as a little-endian uint64 directly from the
+   * message's storage, without allocating. The value is returned as the equivalent Java
+   * {@code long} bit pattern.
+   *
+   * @throws MissingTagException if no mapping exists for {@code tag}
+   * @throws InvalidValueLengthException if the value is not exactly 8 bytes long
+   */
+  public long getUInt64LE(RtTag tag) {
+    checkValueLength(tag, 8);
 
-    // Spec says max # tags can be 2^32-1, but capping at 64k tags in this implementation
-    if (readNumTags > 0xffffL) {
-      throw new InvalidNumTagsException("invalid num_tags value " + readNumTags);
+    if (isView()) {
+      checkOpen();
+      return data.getLong(valueIndices[tag.ordinal()]);
+    }
+    return BytesUtil.getLongLE(get(tag), 0);
+  }
+
+  /**
+   * Copy the value associated with {@code tag} into {@code dst} starting at {@code dstIndex}.
+   *
+   * @return The number of bytes copied, which is the length of the value
+   * @throws MissingTagException if no mapping exists for {@code tag}
+   * @throws IllegalArgumentException if the value does not fit in {@code dst} at {@code dstIndex}
+   */
+  public int copyTo(RtTag tag, byte[] dst, int dstIndex) {
+    checkNotNull(dst, "dst");
+    checkContains(tag);
+
+    int length = valueLength(tag);
+    if (dstIndex < 0 || dstIndex > dst.length - length) {
+      throw new IllegalArgumentException(
+          "value of length " + length + " does not fit in dst[" + dst.length + "] at " + dstIndex
+      );
     }
 
-    return (int) readNumTags;
+    if (isView()) {
+      checkOpen();
+      BytesUtil.getBytes(data, valueIndices[tag.ordinal()], dst, dstIndex, length);
+    } else {
+      System.arraycopy(get(tag), 0, dst, dstIndex, length);
+    }
+    return length;
   }
 
-  private Map<RtTag, byte[]> extractSingleMapping(ByteBuf msg) {
-    long uintTag = msg.readUnsignedInt();
-    RtTag tag = RtTag.fromUnsignedInt((int) uintTag);
+  /**
+   * Zero-copy access to the value associated with {@code tag}. For views the returned buffer is a
+   * slice of the backing buffer and is only valid until this message is {@link #close() closed}.
+   *
+   * @return A {@link ByteBuf} holding the value associated with {@code tag}, or {@code null} if no
+   * mapping exists.
+   */
+  public ByteBuf slice(RtTag tag) {
+    if (!contains(tag)) {
+      return null;
+    }
+
+    if (owner != null) {
+      checkOpen();
+      return owner.slice(valueIndices[tag.ordinal()], valueLengths[tag.ordinal()]);
+    }
+    return Unpooled.wrappedBuffer(nioBuffer(tag));
+  }
 
-    byte[] value = new byte[msg.readableBytes()];
-    msg.readBytes(value);
+  /**
+   * Zero-copy, read-only access to the value associated with {@code tag}. For views the returned
+   * buffer shares the backing buffer's memory and is only valid until this message is {@link
+   * #close() closed}.
+   *
+   * @return A read-only {@link ByteBuffer} holding the value associated with {@code tag}, or
+   * {@code null} if no mapping exists.
+   */
+  public ByteBuffer nioBuffer(RtTag tag) {
+    if (!contains(tag)) {
+      return null;
+    }
 
-    return Collections.singletonMap(tag, value);
+    if (isView()) {
+      checkOpen();
+      ByteBuffer dup = data.duplicate();
+      dup.limit(valueIndices[tag.ordinal()] + valueLengths[tag.ordinal()]);
+      dup.position(valueIndices[tag.ordinal()]);
+      return dup.slice().asReadOnlyBuffer();
+    }
+    if (isVirtualPadding(tag)) {
+      return (ByteBuffer) ZEROS_NIO.duplicate().limit(paddingLength);
+    }
+    return ByteBuffer.wrap(values[tag.ordinal()]).asReadOnlyBuffer();
   }
 
-  private Map<RtTag, byte[]> extractMultiMapping(ByteBuf msg) {
-    // extractOffsets will leave the reader index positioned at the first tag
-    int[] offsets = extractOffsets(msg);
+  /**
+   * Copy the value found by following {@code path} through nested messages, for example {@code
+   * get(CERT, DELE, PUBK)} for the delegated public key of a response. Each enclosing message is
+   * checked as it is walked, exactly as if it were parsed, but none is turned into an {@code
+   * RtMessage}; only the final value is copied.
+   *
+   * @return The value at the end of {@code path}, or {@code null} if any tag along it is absent
+   */
+  public byte[] get(RtTag... path) {
+    ByteBuffer source = pathSource(path);
+    long bounds = (source == null) ? -1 : locatePath(source, path);
+    if (bounds < 0) {
+      return null;
+    }
 
-    int startOfValues = msg.readerIndex() + (4 * numTags);
-    Map<RtTag, byte[]> mapping = new LinkedHashMap<>(numTags);
-    RtTag prevTag = null;
+    byte[] value = new byte[boundsLength(bounds)];
+    BytesUtil.getBytes(source, boundsStart(bounds), value, 0, value.length);
+    return value;
+  }
+
+  /**
+   * Read the value found by following {@code path} through nested messages as a little-endian
+   * uint32, without copying or parsing any enclosing message.
+   *
+   * @throws MissingTagException if any tag along {@code path} is absent
+   * @throws InvalidValueLengthException if the value is not exactly 4 bytes long
+   * @see #get(RtTag...)
+   */
+  public int getUInt32LE(RtTag... path) {
+    ByteBuffer source = pathSource(path);
+    long bounds = (source == null) ? -1 : locatePath(source, path);
+    checkPathValueLength(path, bounds, 4);
 
-    for (int i = 0; i < offsets.length; i++) {
-      long uintCurrTag = msg.readUnsignedInt();
-      RtTag currTag = RtTag.fromUnsignedInt((int) uintCurrTag);
+    return source.getInt(boundsStart(bounds));
+  }
 
-      if ((prevTag != null) && currTag.isLessThan(prevTag)) {
-        String exMsg = String.format(
-            "tags not strictly increasing: current '%s' (0x%08x), previous '%s' (0x%08x)",
-            currTag, currTag.valueLE(), prevTag, prevTag.valueLE()
-        );
-        throw new TagsNotIncreasingException(exMsg);
-      }
+  /**
+   * Read the value found by following {@code path} through nested messages as a little-endian
+   * uint64, without copying or parsing any enclosing message.
+   *
+   * @throws MissingTagException if any tag along {@code path} is absent
+   * @throws InvalidValueLengthException if the value is not exactly 8 bytes long
+   * @see #get(RtTag...)
+   */
+  public long getUInt64LE(RtTag... path) {
+    ByteBuffer source = pathSource(path);
+    long bounds = (source == null) ? -1 : locatePath(source, path);
+    checkPathValueLength(path, bounds, 8);
 
-      int valueIdx = startOfValues + offsets[i];
-      int valueLen = ((i + 1) == offsets.length) ? msg.readableBytes() - offsets[i]
-                                                 : offsets[i + 1] - offsets[i];
-      byte[] valueBytes = new byte[valueLen];
-      msg.getBytes(valueIdx, valueBytes);
+    return source.getLong(boundsStart(bounds));
+  }
 
-      mapping.put(currTag, valueBytes);
-      prevTag = currTag;
+  /**
+   * Zero-copy, read-only access to the value found by following {@code path} through nested
+   * messages. The same validity rules as {@link #nioBuffer(RtTag)} apply.
+   *
+   * @return A read-only {@link ByteBuffer} holding the value at the end of {@code path}, or {@code
+   * null} if any tag along it is absent
+   * @see #get(RtTag...)
+   */
+  public ByteBuffer nioBuffer(RtTag... path) {
+    ByteBuffer source = pathSource(path);
+    long bounds = (source == null) ? -1 : locatePath(source, path);
+    if (bounds < 0) {
+      return null;
     }
 
-    return Collections.unmodifiableMap(mapping);
+    ByteBuffer dup = source.duplicate();
+    dup.limit(boundsStart(bounds) + boundsLength(bounds));
+    dup.position(boundsStart(bounds));
+    return dup.slice().asReadOnlyBuffer();
   }
 
-  private int[] extractOffsets(ByteBuf msg) {
-    int numOffsets = numTags - 1;
-    int endOfPayload = msg.readableBytes() - (4 * numOffsets);
+  /**
+   * @return True if this message contains a value for {@code tag}
+   */
+  public boolean contains(RtTag tag) {
+    if (!isView()) {
+      return values[tag.ordinal()] != null || isVirtualPadding(tag);
+    }
 
-    // Offset for every tag, including the value of tag 0 which starts immediately after header.
-    int[] offsets = new int[numTags];
-    offsets[0] = 0;
+    // Values follow the header, so a present value never begins at index zero of the slice
+    return valueIndices[tag.ordinal()] != 0;
+  }
 
-    for (int i = 0; i < numOffsets; i++) {
-      long offset = msg.readUnsignedIntLE();
+  /**
+   * @return The message's mapping, iterated in wire order. If this message is a view, every value
+   * is copied out of the backing buffer when the mapping is created, as is builder padding.
+   */
+  public Map<RtTag, byte[]> mapping() {
+    if (!isView() && paddingLength < 0) {
+      return new ArrayMapping(tags, values);
+    }
 
-      if ((offset % 4) != 0) {
-        throw new TagOffsetUnalignedException("offset " + i + " not multiple of 4: " + offset);
-      }
-      if (offset > endOfPayload) {
-        throw new TagOffsetOverflowException("offset " + i + " overflow: " + offset);
+    byte[][] copied = new byte[RtTag.COUNT][];
+    for (RtTag tag : tags) {
+      copied[tag.ordinal()] = get(tag);
+    }
+    return new ArrayMapping(tags, copied);
+  }
+
+  /**
+   * @return True if this message is a zero-copy view created by {@link #view(ByteBuffer)} or
+   * {@link #view(ByteBuf)}.
+   */
+  public boolean isView() {
+    return data != null;
+  }
+
+  /**
+   * @return True if this message was parsed ignoring unknown tags, which nested messages parsed
+   * from its values should do as well
+   */
+  public boolean skipsUnknownTags() {
+    return skipsUnknownTags;
+  }
+
+  /**
+   * Release the buffer retained by a view of a {@link ByteBuf}. Has no effect on eager messages,
+   * on views of a {@link ByteBuffer}, or on views that have already been closed. Reading a value
+   * of a closed view of a {@code ByteBuf} throws {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    if (owner != null && !isClosed) {
+      isClosed = true;
+      owner.release();
+    }
+  }
+
+  /**
+   * @return The tag at position {@code idx} in wire order
+   */
+  /*package*/ RtTag tagAt(int idx) {
+    return tags[idx];
+  }
+
+  /**
+   * @return Length of the value associated with {@code tag}, which must be present
+   */
+  /*package*/ int valueLength(RtTag tag) {
+    if (isView()) {
+      return valueLengths[tag.ordinal()];
+    }
+    return isVirtualPadding(tag) ? paddingLength : values[tag.ordinal()].length;
+  }
+
+  /**
+   * @return Sum of the lengths of all values
+   */
+  /*package*/ int valuesLength() {
+    int sum = 0;
+    for (RtTag tag : tags) {
+      sum += valueLength(tag);
+    }
+    return sum;
+  }
+
+  /**
+   * @return The canonical wire encoding of this message, computed on first use and shared by every
+   * later caller. The array must not be modified.
+   */
+  /*package*/ byte[] encoded() {
+    byte[] result = encoded;
+    if (result == null) {
+      result = new byte[RtWire.encodedSize(this)];
+      RtWire.writeTo(this, ByteBuffer.wrap(result));
+      encoded = result;
+    }
+    return result;
+  }
+
+  /**
+   * @return The canonical wire encoding if it has already been computed, otherwise {@code null}
+   */
+  /*package*/ byte[] encodedIfPresent() {
+    return encoded;
+  }
+
+  /**
+   * Write the value associated with {@code tag}, which must be present, to {@code out} without
+   * any intermediate copies.
+   */
+  /*package*/ void writeValue(RtTag tag, ByteBuf out) {
+    checkOpen();
+    if (owner != null) {
+      out.writeBytes(owner, valueIndices[tag.ordinal()], valueLengths[tag.ordinal()]);
+    } else if (isView()) {
+      out.writeBytes(nioBuffer(tag));
+    } else if (isVirtualPadding(tag)) {
+      out.writeZero(paddingLength);
+    } else {
+      out.writeBytes(values[tag.ordinal()]);
+    }
+  }
+
+  /**
+   * Write the value associated with {@code tag}, which must be present, to {@code out} at its
+   * position without any intermediate copies.
+   */
+  /*package*/ void writeValue(RtTag tag, ByteBuffer out) {
+    checkOpen();
+    if (isVirtualPadding(tag)) {
+      for (int remaining = paddingLength; remaining > 0; remaining -= ZEROS.length) {
+        out.put(ZEROS, 0, Math.min(remaining, ZEROS.length));
       }
+      return;
+    }
+    if (!isView()) {
+      out.put(values[tag.ordinal()]);
+      return;
+    }
+
+    if (data.hasArray()) {
+      out.put(data.array(), data.arrayOffset() + valueIndices[tag.ordinal()],
+          valueLengths[tag.ordinal()]);
+    } else {
+      out.put(nioBuffer(tag));
+    }
+  }
+
+  /**
+   * @return The value associated with {@code tag}, which must be present, as a {@link ByteBuf}
+   * sharing this message's storage. The caller must release it. Views retain their buffer for the
+   * returned value, so it remains valid after this message is closed.
+   */
+  /*package*/ ByteBuf retainedValue(RtTag tag) {
+    checkOpen();
+    if (owner != null) {
+      return owner.retainedSlice(valueIndices[tag.ordinal()], valueLengths[tag.ordinal()]);
+    }
+    if (isVirtualPadding(tag)) {
+      return Unpooled.wrappedBuffer(ZEROS, 0, paddingLength).asReadOnly();
+    }
+    return Unpooled.wrappedBuffer(nioBuffer(tag));
+  }
+
+  // Little-endian buffer holding the value of the first tag of path, or null if it is absent
+  private ByteBuffer pathSource(RtTag[] path) {
+    checkNotNull(path, "path");
+    checkArgument(path.length > 0, "path is empty");
+
+    if (!contains(path[0])) {
+      return null;
+    }
+    checkOpen();
+    return isView() ? data : nioBuffer(path[0]).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  // Bounds within source of the value at the end of path, packed as RtMessageReader.locate does
+  private long locatePath(ByteBuffer source, RtTag[] path) {
+    int start = isView() ? valueIndices[path[0].ordinal()] : 0;
+    int end = start + valueLength(path[0]);
 
-      checkState((int) offset >= 0, "impossible, negative offset");
-      offsets[i + 1] = (int) offset;
+    for (int i = 1; i < path.length; i++) {
+      long bounds = RtMessageReader.locate(source, start, end, path[i], skipsUnknownTags);
+      if (bounds < 0) {
+        return -1;
+      }
+      start = boundsStart(bounds);
+      end = start + boundsLength(bounds);
     }
 
-    return offsets;
+    return ((long) start << 32) | end;
+  }
+
+  private static int boundsStart(long bounds) {
+    return (int) (bounds >>> 32);
+  }
+
+  private static int boundsLength(long bounds) {
+    return (int) bounds - boundsStart(bounds);
   }
 
-  private void checkMessageLength(ByteBuf msg) {
-    int readableBytes = msg.readableBytes();
+  private static void checkPathValueLength(RtTag[] path, long bounds, int expected) {
+    if (bounds < 0) {
+      throw new MissingTagException("path %s not present", Arrays.asList(path));
+    }
 
-    if (readableBytes < 4) {
-      throw new MessageTooShortException("too short, <4 bytes total");
+    int length = boundsLength(bounds);
+    if (length != expected) {
+      throw new InvalidValueLengthException(
+          "path %s value length %d, expected %d", Arrays.asList(path), length, expected
+      );
     }
-    if ((readableBytes % 4) != 0) {
-      throw new MessageUnalignedException("message length not multiple of 4: " + readableBytes);
+  }
+
+  private boolean isVirtualPadding(RtTag tag) {
+    return (tag == RtTag.PAD) && (paddingLength >= 0);
+  }
+
+  // Values of a closed view of a ByteBuf may already have been freed or reused
+  private void checkOpen() {
+    checkState(!isClosed, "view has been closed");
+  }
+
+  private void checkContains(RtTag tag) {
+    if (!contains(tag)) {
+      throw new MissingTagException("tag %s not present", tag);
     }
   }
 
-  private void checkSufficientPayload(ByteBuf msg) {
-    int expectedReadable = 4 * ((numTags - 1) + numTags);
+  private void checkValueLength(RtTag tag, int expected) {
+    checkContains(tag);
 
-    if (msg.readableBytes() < expectedReadable) {
-      throw new MessageTooShortException(
-          "too short, insufficient length for numTags of " + numTags
+    int length = valueLength(tag);
+    if (length != expected) {
+      throw new InvalidValueLengthException(
+          "tag %s value length %d, expected %d", tag, length, expected
       );
     }
   }
 
+  /**
+   * Read-only {@link Map} over ordinal-indexed values that iterates in wire order.
+   */
+  private static final class ArrayMapping extends AbstractMap<RtTag, byte[]> {
+
+    private final RtTag[] tags;
+    private final byte[][] values;
+
+    ArrayMapping(RtTag[] tags, byte[][] values) {
+      this.tags = tags;
+      this.values = values;
+    }
+
+    @Override
+    public int size() {
+      return tags.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return (key instanceof RtTag) && values[((RtTag) key).ordinal()] != null;
+    }
+
+    @Override
+    public byte[] get(Object key) {
+      return (key instanceof RtTag) ? values[((RtTag) key).ordinal()] : null;
+    }
+
+    @Override
+    public Set<Entry<RtTag, byte[]>> entrySet() {
+      return new AbstractSet<Entry<RtTag, byte[]>>() {
+        @Override
+        public int size() {
+          return tags.length;
+        }
+
+        @Override
+        public Iterator<Entry<RtTag, byte[]>> iterator() {
+          return new Iterator<Entry<RtTag, byte[]>>() {
+            private int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+              return idx < tags.length;
+            }
+
+            @Override
+            public Entry<RtTag, byte[]> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              RtTag tag = tags[idx++];
+              return new SimpleImmutableEntry<>(tag, values[tag.ordinal()]);
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * Messages are equal if they contain the same tags with the same values, and therefore the same
+   * canonical wire encoding. Views and eager messages with the same contents are equal, and tags
+   * skipped while parsing take no part. The comparison uses each message's memoized encoding, so
+   * it is cheap to repeat, but a view of a {@link ByteBuf} must be compared, or hashed, at least
+   * once before it is {@link #close() closed}.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RtMessage)) {
+      return false;
+    }
+
+    RtMessage other = (RtMessage) o;
+    if ((hash != 0) && (other.hash != 0) && (hash != other.hash)) {
+      return false;
+    }
+    return Arrays.equals(encoded(), other.encoded());
+  }
+
+  /**
+   * @return A hash of this message's canonical wire encoding, computed once and cached
+   */
+  @Override
+  public int hashCode() {
+    int h = hash;
+    if (h == 0) {
+      h = Arrays.hashCode(encoded());
+      hash = h;
+    }
+    return h;
+  }
+
   @Override
   public String toString() {
     return toString(1);
@@ -239,14 +833,14 @@ public final class RtMessage {
 
     StringBuilder sb = new StringBuilder("RtMessage|").append(numTags).append("|{\n");
 
-    if (map != null) {
-      map.forEach(
+    if (numTags > 0) {
+      mapping().forEach(
           (tag, value) -> {
             sb.append(indent2).append(tag.name()).append("(").append(value.length).append(") = ");
             if (tag.isNested()) {
-              sb.append(fromBytes(value).toString(indentLevel + 1));
+              sb.append(fromBytes(value, skipsUnknownTags).toString(indentLevel + 1));
             } else {
-              sb.append(ByteBufUtil.hexDump(value)).append('\n');
+              sb.append(BytesUtil.bytesToHex(value)).append('\n');
             }
           }
       );
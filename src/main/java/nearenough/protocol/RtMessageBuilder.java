@@ -21,23 +21,24 @@ import static nearenough.util.Preconditions.checkNotNull;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
 
 public final class RtMessageBuilder {
 
-  private final Map<RtTag, byte[]> map = new TreeMap<>(
-      Comparator.comparing(RtTag::valueLE, Integer::compareUnsigned)
-  );
+  // Values indexed by tag ordinal; wire order is applied when the message is built
+  private final byte[][] values = new byte[RtTag.COUNT][];
+  private int numTags;
+
+  // Length of the all-zero PAD value added by build(), or -1 if none. Padding is virtual: the
+  // zeros are written by the encoder and never allocated here.
+  private int paddingLength = -1;
 
-  private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
   private boolean shouldAddPadding = false;
 
   public RtMessageBuilder add(RtTag tag, byte[] value) {
     checkNotNull(tag, "tag must be non-null");
+    checkNotNull(value, "value must be non-null");
 
-    map.put(tag, value);
+    put(tag, value);
     return this;
   }
 
@@ -47,7 +48,7 @@ public final class RtMessageBuilder {
 
     byte[] bytes = new byte[value.readableBytes()];
     value.readBytes(bytes);
-    map.put(tag, bytes);
+    put(tag, bytes);
 
     return this;
   }
@@ -56,8 +57,8 @@ public final class RtMessageBuilder {
     checkNotNull(tag, "tag must be non-null");
     checkNotNull(msg, "msg must be non-null");
 
-    ByteBuf encoded = RtWire.toWire(msg, allocator);
-    return add(tag, encoded);
+    put(tag, RtWire.toBytes(msg));
+    return this;
   }
 
   public RtMessageBuilder addPadding(boolean shouldPad) {
@@ -65,33 +66,77 @@ public final class RtMessageBuilder {
     return this;
   }
 
+  /**
+   * @deprecated Nested messages are encoded directly into their {@code byte[]} value, so no
+   * allocator is used. Retained for compatibility; has no effect.
+   */
+  @Deprecated
   public RtMessageBuilder allocator(ByteBufAllocator allocator) {
     checkNotNull(allocator, "allocator must be non-null");
-
-    this.allocator = allocator;
     return this;
   }
 
   public RtMessage build() {
-    checkArgument(!map.isEmpty(), "Cannot build an empty RtMessage");
+    checkArgument(numTags > 0, "Cannot build an empty RtMessage");
 
-    int encodedSize = RtWire.computeEncodedSize(map);
+    int encodedSize = RtWire.computeEncodedSize(numTags, valuesLength());
 
     if (encodedSize < MIN_REQUEST_LENGTH && shouldAddPadding) {
-      // Additional bytes added to message size for PAD tag (4) and its offset field (4)
-      int padOverhead = 8;
-      // The overhead bytes alone may be sufficient to reach the minimum size; it's possible
-      // to end up with a zero-length pad value
-      int paddingBytes = Math.max(0, (MIN_REQUEST_LENGTH - encodedSize - padOverhead));
-      byte[] padding = new byte[paddingBytes];
-      map.put(RtTag.PAD, padding);
+      int paddingBytes;
+      byte[] explicitPad = values[RtTag.PAD.ordinal()];
+
+      if (explicitPad != null) {
+        // An explicit PAD value is already counted, so grow it by the shortfall
+        paddingBytes = explicitPad.length + (MIN_REQUEST_LENGTH - encodedSize);
+      } else {
+        // Additional bytes added to message size for PAD tag (4) and its offset field (4)
+        int padOverhead = 8;
+        // The overhead bytes alone may be sufficient to reach the minimum size; it's possible
+        // to end up with a zero-length pad value
+        paddingBytes = Math.max(0, (MIN_REQUEST_LENGTH - encodedSize - padOverhead));
+      }
+      putPadding(paddingBytes);
     }
 
     return new RtMessage(this);
   }
 
-  /*package*/ Map<RtTag, byte[]> mapping() {
-    return map;
+  private void put(RtTag tag, byte[] value) {
+    if (tag == RtTag.PAD && paddingLength >= 0) {
+      paddingLength = -1;
+    } else if (values[tag.ordinal()] == null) {
+      numTags++;
+    }
+    values[tag.ordinal()] = value;
+  }
+
+  private void putPadding(int length) {
+    if (values[RtTag.PAD.ordinal()] != null) {
+      values[RtTag.PAD.ordinal()] = null;
+    } else if (paddingLength < 0) {
+      numTags++;
+    }
+    paddingLength = length;
+  }
+
+  private int valuesLength() {
+    int sum = Math.max(0, paddingLength);
+    for (byte[] value : values) {
+      sum += (value == null) ? 0 : value.length;
+    }
+    return sum;
+  }
+
+  /*package*/ int numTags() {
+    return numTags;
+  }
+
+  /*package*/ byte[][] values() {
+    return values;
+  }
+
+  /*package*/ int paddingLength() {
+    return paddingLength;
   }
 
 }
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.util.Preconditions.checkElementIndex;
+import static nearenough.util.Preconditions.checkNotNull;
+import static nearenough.util.Preconditions.checkPositionIndexes;
+import static nearenough.util.Preconditions.checkState;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import nearenough.util.BytesUtil;
+import nearenough.protocol.exceptions.InvalidNumTagsException;
+import nearenough.protocol.exceptions.MessageTooShortException;
+import nearenough.protocol.exceptions.MessageUnalignedException;
+import nearenough.protocol.exceptions.TagOffsetOverflowException;
+import nearenough.protocol.exceptions.TagOffsetUnalignedException;
+import nearenough.protocol.exceptions.TagsNotIncreasingException;
+
+/**
+ * A mutable, reusable parser of Roughtime messages.
+ * <p>
+ * {@link #reset(ByteBuffer)} validates a message and records its tags and value offsets in
+ * internal arrays that are reused from one message to the next, so a receive loop that parses
+ * every datagram with the same {@code RtMessageReader} reaches a steady state that allocates
+ * nothing per message. Values are read in place from the buffer passed to {@code reset}; the
+ * reader does not copy that buffer and never modifies its position, limit, or byte order.
+ * <p>
+ * {@link #reset(ByteBuf)} is an adapter for Netty buffers, which must then be on the classpath.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class RtMessageReader {
+
+  // Enough for any message defined by the protocol, grown on demand
+  private static final int INITIAL_CAPACITY = 8;
+
+  private ByteBuffer nioBuf;
+  private ByteBuf buf;
+  private int numTags;
+
+  // Difference between an index within buf and the same index within nioBuf
+  private int indexBias;
+
+  // Tags in wire order, and the indices within nioBuf where each value begins and ends. While
+  // parsing, valueStarts first holds the start of every value on the wire, known tag or not.
+  private RtTag[] tags = new RtTag[INITIAL_CAPACITY];
+  private int[] valueStarts = new int[INITIAL_CAPACITY];
+  private int[] valueEnds = new int[INITIAL_CAPACITY];
+
+  private boolean skipUnknownTags;
+
+  // Position of each tag in the current message indexed by tag ordinal, -1 if absent
+  private final int[] positions = new int[RtTag.COUNT];
+
+  public RtMessageReader() {
+    Arrays.fill(positions, -1);
+  }
+
+  /**
+   * Controls how tags this implementation does not recognize are treated. By default an unknown
+   * tag fails parsing with {@link nearenough.protocol.exceptions.InvalidTagException}. When
+   * skipping, unknown tags and their values are still checked for order and bounds but are
+   * otherwise ignored: they are absent from {@link #numTags()}, {@link #tag(int)} and the other
+   * accessors. Skipping allocates nothing, so it is suitable for newer servers that send tags
+   * such as VER that are not part of this implementation.
+   *
+   * @return This reader
+   */
+  public RtMessageReader skipUnknownTags(boolean skipUnknownTags) {
+    this.skipUnknownTags = skipUnknownTags;
+    return this;
+  }
+
+  /**
+   * @return True if unknown tags are skipped rather than rejected
+   */
+  public boolean skipsUnknownTags() {
+    return skipUnknownTags;
+  }
+
+  /**
+   * Parse the remaining bytes of {@code msg}, which can be direct or heap based, replacing
+   * whatever message this reader held before. The contents of {@code msg} must be a well-formed
+   * Roughtime message, and {@code msg} must remain unmodified, with an unchanged limit, while its
+   * values are being read through this reader.
+   * <p>
+   * If validation fails the exception is propagated and the reader is left empty.
+   *
+   * @return This reader
+   */
+  public RtMessageReader reset(ByteBuffer msg) {
+    checkNotNull(msg, "msg");
+
+    return reset(msg, msg.position(), msg.remaining());
+  }
+
+  /**
+   * Parse the {@code length} bytes of {@code msg} starting at absolute {@code index}, regardless
+   * of its position and limit, replacing whatever message this reader held before. Otherwise as
+   * {@link #reset(ByteBuffer)}. Suited to scanning many messages stored back to back in one
+   * large buffer, such as a {@link java.nio.MappedByteBuffer} of an archive, in place. If the
+   * region extends past the limit of {@code msg}, it is read through a duplicate whose limit is
+   * the capacity, and {@link #nioBuffer()} returns that duplicate.
+   *
+   * @return This reader
+   */
+  public RtMessageReader reset(ByteBuffer msg, int index, int length) {
+    checkNotNull(msg, "msg");
+    checkPositionIndexes(index, index + length, msg.capacity());
+
+    // Absolute reads are bounded by the limit, so lift it only when the region needs that
+    if (index + length > msg.limit()) {
+      msg = msg.duplicate();
+      msg.clear();
+    }
+
+    clear();
+    parse(msg, index, index + length);
+
+    this.nioBuf = msg;
+    return this;
+  }
+
+  /**
+   * Parse the readable bytes of {@code msg}, replacing whatever message this reader held before.
+   * As {@link #reset(ByteBuffer)}, except that the reader or writer index of {@code msg} must
+   * remain unchanged and indices reported by {@link #valueIndex(int)} are within {@code msg}.
+   * <p>
+   * Values of a single-component buffer are read through its internal NIO view, so nothing is
+   * allocated per call, but {@code msg} must not be accessed through {@code internalNioBuffer}
+   * elsewhere while they are being read. A composite of several components has no such view and
+   * is copied into a new NIO buffer on every call.
+   *
+   * @return This reader
+   */
+  public RtMessageReader reset(ByteBuf msg) {
+    checkNotNull(msg, "msg");
+
+    int start = msg.readerIndex();
+    int len = msg.readableBytes();
+
+    // Single-component buffers expose a cached NIO view, avoiding any per-call allocation
+    ByteBuffer nio = (msg.nioBufferCount() == 1) ? msg.internalNioBuffer(start, len)
+                                                 : msg.nioBuffer(start, len);
+    reset(nio);
+
+    this.buf = msg;
+    this.indexBias = msg.readerIndex() - nio.position();
+    return this;
+  }
+
+  private void parse(ByteBuffer msg, int start, int end) {
+    checkMessageLength(end - start);
+    int msgNumTags = extractNumTags(msg, start);
+
+    if (msgNumTags == 0) {
+      this.numTags = 0;
+      return;
+    }
+
+    checkSufficientPayload(end - start, msgNumTags);
+    ensureCapacity(msgNumTags);
+    extractOffsets(msg, start, end, msgNumTags, valueStarts);
+
+    try {
+      this.numTags = extractTags(msg, start, end, msgNumTags);
+    } catch (RuntimeException e) {
+      // Forget the positions of any tags recorded before the failure
+      clear();
+      throw e;
+    }
+  }
+
+  /**
+   * Forget the current message, if any.
+   */
+  public void clear() {
+    Arrays.fill(positions, -1);
+    this.nioBuf = null;
+    this.buf = null;
+    this.indexBias = 0;
+    this.numTags = 0;
+  }
+
+  /**
+   * @return The buffer passed to {@link #reset(ByteBuffer)} for the current message, or a view of
+   * the one passed to {@link #reset(ByteBuf)}. {@code null} if the reader is empty.
+   */
+  public ByteBuffer nioBuffer() {
+    return nioBuf;
+  }
+
+  /**
+   * @return The buffer passed to {@link #reset(ByteBuf)} for the current message, or {@code null}
+   * if the reader is empty or was reset from a {@link ByteBuffer}.
+   */
+  public ByteBuf buffer() {
+    return buf;
+  }
+
+  /**
+   * @return Number of protocol tags in the current message
+   */
+  public int numTags() {
+    return numTags;
+  }
+
+  /**
+   * @return The tag at position {@code idx} of the current message
+   */
+  public RtTag tag(int idx) {
+    checkElementIndex(idx, numTags);
+    return tags[idx];
+  }
+
+  /**
+   * @return The position of {@code tag} within the current message, or -1 if it is not present.
+   */
+  public int indexOf(RtTag tag) {
+    return positions[tag.ordinal()];
+  }
+
+  /**
+   * @return True if {@code tag} is present in the current message
+   */
+  public boolean contains(RtTag tag) {
+    return indexOf(tag) >= 0;
+  }
+
+  /**
+   * @return The index of the first byte of the value at position {@code idx}, within {@link
+   * #buffer()} if the reader was reset from a {@link ByteBuf}, otherwise within {@link
+   * #nioBuffer()}
+   */
+  public int valueIndex(int idx) {
+    checkElementIndex(idx, numTags);
+    return valueStarts[idx] + indexBias;
+  }
+
+  /**
+   * @return The length in bytes of the value at position {@code idx}
+   */
+  public int valueLength(int idx) {
+    checkElementIndex(idx, numTags);
+    return valueEnds[idx] - valueStarts[idx];
+  }
+
+  /**
+   * @return A copy of the value associated with {@code tag}, or {@code null} if it is not present.
+   */
+  public byte[] get(RtTag tag) {
+    int idx = indexOf(tag);
+    if (idx < 0) {
+      return null;
+    }
+
+    byte[] value = new byte[valueLength(idx)];
+    BytesUtil.getBytes(nioBuf, valueStarts[idx], value, 0, value.length);
+    return value;
+  }
+
+  /**
+   * @return A copy of the tags of the current message in wire order
+   */
+  /*package*/ RtTag[] copyTags() {
+    return Arrays.copyOf(tags, numTags);
+  }
+
+  /**
+   * @return The index within {@link #nioBuffer()} of the first byte of the value at position
+   * {@code idx}
+   */
+  /*package*/ int nioValueIndex(int idx) {
+    return valueStarts[idx];
+  }
+
+  private void ensureCapacity(int msgNumTags) {
+    if (tags.length < msgNumTags) {
+      this.tags = new RtTag[msgNumTags];
+      this.valueStarts = new int[msgNumTags];
+      this.valueEnds = new int[msgNumTags];
+    }
+  }
+
+  private static int extractNumTags(ByteBuffer msg, int start) {
+    long readNumTags = BytesUtil.getUnsignedIntLE(msg, start);
+
+    // Spec says max # tags can be 2^32-1, but capping at 64k tags in this implementation
+    if (readNumTags > 0xffffL) {
+      throw new InvalidNumTagsException("invalid num_tags value %d", readNumTags);
+    }
+
+    return (int) readNumTags;
+  }
+
+  // Checks every offset, storing the start of each value in valueStarts if it is not null
+  private static void extractOffsets(
+      ByteBuffer msg, int start, int end, int msgNumTags, int[] valueStarts) {
+    int numOffsets = msgNumTags - 1;
+    int offsetsStart = start + 4;
+    int endOfPayload = (end - offsetsStart) - (4 * numOffsets);
+    int startOfValues = offsetsStart + (4 * numOffsets) + (4 * msgNumTags);
+
+    // Offset for every tag, including the value of tag 0 which starts immediately after header.
+    int prevOffset = 0;
+    if (valueStarts != null) {
+      valueStarts[0] = startOfValues;
+    }
+
+    for (int i = 0; i < numOffsets; i++) {
+      long offset = BytesUtil.getUnsignedIntLE(msg, offsetsStart + (4 * i));
+
+      if ((offset % 4) != 0) {
+        throw new TagOffsetUnalignedException("offset %d not multiple of 4: %d", i, offset);
+      }
+      if (offset > endOfPayload) {
+        throw new TagOffsetOverflowException("offset %d overflow: %d", i, offset);
+      }
+      if (offset < prevOffset) {
+        throw new TagOffsetOverflowException("offset %d precedes previous offset: %d", i, offset);
+      }
+
+      checkState((int) offset >= 0, "impossible, negative offset");
+      prevOffset = (int) offset;
+      if (valueStarts != null) {
+        valueStarts[i + 1] = startOfValues + prevOffset;
+      }
+    }
+
+    // Offsets are non-decreasing, so only the last one can point past the end of the values
+    if (startOfValues + prevOffset > end) {
+      throw new TagOffsetOverflowException("offset %d overflow: %d", numOffsets - 1, prevOffset);
+    }
+  }
+
+  // Returns the number of known tags, which are compacted to the front of tags and value bounds
+  private int extractTags(ByteBuffer msg, int start, int end, int msgNumTags) {
+    int tagsStart = start + 4 + (4 * (msgNumTags - 1));
+    int prevValueLE = 0;
+    int numKnown = 0;
+
+    for (int i = 0; i < msgNumTags; i++) {
+      int uintCurrTag = BytesUtil.getInt(msg, tagsStart + (4 * i));
+      RtTag currTag = checkTag(uintCurrTag, prevValueLE, i, skipUnknownTags);
+      prevValueLE = Integer.reverseBytes(uintCurrTag);
+
+      if (currTag == null) {
+        continue;
+      }
+
+      // numKnown <= i, so the start of value i + 1 is never overwritten before it is read
+      int valueEnd = (i == msgNumTags - 1) ? end : valueStarts[i + 1];
+      tags[numKnown] = currTag;
+      valueStarts[numKnown] = valueStarts[i];
+      valueEnds[numKnown] = valueEnd;
+      positions[currTag.ordinal()] = numKnown;
+      numKnown++;
+    }
+
+    return numKnown;
+  }
+
+  // Returns the tag at position idx, or null if it is unknown and skipUnknownTags is set
+  private static RtTag checkTag(int uintTag, int prevValueLE, int idx, boolean skipUnknownTags) {
+    RtTag tag = skipUnknownTags ? RtTag.lookup(uintTag) : RtTag.fromUnsignedInt(uintTag);
+
+    // Compared as little-endian values so that unknown tags are held to the same rule
+    int valueLE = Integer.reverseBytes(uintTag);
+    if ((idx > 0) && (Integer.compareUnsigned(prevValueLE, valueLE) >= 0)) {
+      throw new TagsNotIncreasingException(
+          "tags not strictly increasing: current 0x%08x, previous 0x%08x", valueLE, prevValueLE
+      );
+    }
+    return tag;
+  }
+
+  /**
+   * Locate the value of {@code tag} within the message occupying {@code [start, end)} of {@code
+   * msg} without retaining anything. The message is checked exactly as {@link #reset(ByteBuffer)}
+   * checks it, and fails with the same exceptions, but nothing is allocated. This is how nested
+   * values are reached without parsing each enclosing message into an {@link RtMessage}.
+   *
+   * @return The index of the first byte of the value in the high 32 bits and the index just past
+   * its last byte in the low 32 bits, or -1 if {@code tag} is not present
+   */
+  /*package*/ static long locate(
+      ByteBuffer msg, int start, int end, RtTag tag, boolean skipUnknownTags) {
+    checkMessageLength(end - start);
+    int msgNumTags = extractNumTags(msg, start);
+
+    if (msgNumTags == 0) {
+      return -1;
+    }
+
+    checkSufficientPayload(end - start, msgNumTags);
+    extractOffsets(msg, start, end, msgNumTags, null);
+
+    int tagsStart = start + 4 + (4 * (msgNumTags - 1));
+    int prevValueLE = 0;
+    int found = -1;
+
+    for (int i = 0; i < msgNumTags; i++) {
+      int uintCurrTag = BytesUtil.getInt(msg, tagsStart + (4 * i));
+      checkTag(uintCurrTag, prevValueLE, i, skipUnknownTags);
+      prevValueLE = Integer.reverseBytes(uintCurrTag);
+
+      if (uintCurrTag == tag.wireEncoding()) {
+        found = i;
+      }
+    }
+
+    if (found < 0) {
+      return -1;
+    }
+
+    int startOfValues = tagsStart + (4 * msgNumTags);
+    int valueStart = startOfValues + offsetOf(msg, start, found);
+    int valueEnd = (found == msgNumTags - 1) ? end
+                                             : startOfValues + offsetOf(msg, start, found + 1);
+    return ((long) valueStart << 32) | valueEnd;
+  }
+
+  // Offset of value idx relative to the start of the values; value 0 has no offset field
+  private static int offsetOf(ByteBuffer msg, int start, int idx) {
+    return (idx == 0) ? 0 : BytesUtil.getIntLE(msg, start + (4 * idx));
+  }
+
+  private static void checkMessageLength(int readableBytes) {
+    if (readableBytes < 4) {
+      throw new MessageTooShortException("too short, <4 bytes total");
+    }
+    if ((readableBytes % 4) != 0) {
+      throw new MessageUnalignedException("message length not multiple of 4: %d", readableBytes);
+    }
+  }
+
+  private static void checkSufficientPayload(int readableBytes, int msgNumTags) {
+    int expectedReadable = 4 + 4 * ((msgNumTags - 1) + msgNumTags);
+
+    if (readableBytes < expectedReadable) {
+      throw new MessageTooShortException(
+          "too short, insufficient length for numTags of %d", msgNumTags
+      );
+    }
+  }
+}
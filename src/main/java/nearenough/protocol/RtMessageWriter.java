@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.util.Preconditions.checkArgument;
+import static nearenough.util.Preconditions.checkNotNull;
+import static nearenough.util.Preconditions.checkState;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Streams a Roughtime message directly into an output {@link ByteBuf} without first collecting
+ * its values.
+ * <p>
+ * The number of tags must be known up front. Space for the header (num_tags, offsets, and tags)
+ * is reserved when the writer is created, each value is appended as its tag is written, and the
+ * reserved header is back-patched with the tag and its offset. Tags must be written in wire
+ * order. Nested messages are written in place by a {@link #nested(RtTag, int) sub-writer}.
+ *
+ * <pre>
+ *   RtMessageWriter response = new RtMessageWriter(out, 3);
+ *   RtMessageWriter srep = response.nested(RtTag.SREP, 3);
+ *   srep.put(RtTag.RADI, radius).put(RtTag.MIDP, midpoint).put(RtTag.ROOT, root).finish();
+ *   response.put(RtTag.CERT, cert).put(RtTag.INDX, index).finish();
+ * </pre>
+ */
+public final class RtMessageWriter {
+
+  private final ByteBuf out;
+  private final RtMessageWriter parent;
+  private final int numTags;
+  private final int start;
+  private final int offsetsIndex;
+  private final int tagsIndex;
+  private final int valuesIndex;
+
+  private int tagsWritten;
+  private RtTag prevTag;
+  private RtMessageWriter openChild;
+  private boolean isFinished;
+
+  /**
+   * Begin writing a message of exactly {@code numTags} tags to {@code out} at its writer index.
+   */
+  public RtMessageWriter(ByteBuf out, int numTags) {
+    this(checkNotNull(out, "out"), numTags, null);
+  }
+
+  private RtMessageWriter(ByteBuf out, int numTags, RtMessageWriter parent) {
+    checkArgument(numTags >= 0 && numTags <= RtTag.COUNT, "invalid numTags");
+
+    this.out = out;
+    this.parent = parent;
+    this.numTags = numTags;
+    this.start = out.writerIndex();
+    this.offsetsIndex = start + 4;
+    this.tagsIndex = offsetsIndex + (numTags < 2 ? 0 : 4 * (numTags - 1));
+    this.valuesIndex = tagsIndex + (4 * numTags);
+
+    out.writeIntLE(numTags);
+    out.writeZero(valuesIndex - offsetsIndex);
+  }
+
+  /**
+   * Write {@code tag} with the contents of {@code value}.
+   */
+  public RtMessageWriter put(RtTag tag, byte[] value) {
+    checkNotNull(value, "value");
+    checkAligned(value.length);
+
+    beginValue(tag);
+    out.writeBytes(value);
+    return this;
+  }
+
+  /**
+   * Write {@code tag} with the readable bytes of {@code value}. The reader index of {@code value}
+   * is not modified.
+   */
+  public RtMessageWriter put(RtTag tag, ByteBuf value) {
+    checkNotNull(value, "value");
+    checkAligned(value.readableBytes());
+
+    beginValue(tag);
+    out.writeBytes(value, value.readerIndex(), value.readableBytes());
+    return this;
+  }
+
+  /**
+   * Write {@code tag} with a nested message of exactly {@code numTags} tags. The nested message is
+   * written in place by the returned sub-writer, which must be {@link #finish() finished} before
+   * anything else is written to this writer.
+   *
+   * @return A writer for the nested message
+   */
+  public RtMessageWriter nested(RtTag tag, int numTags) {
+    beginValue(tag);
+    openChild = new RtMessageWriter(out, numTags, this);
+    return openChild;
+  }
+
+  /**
+   * Complete the message. Every tag declared at creation must have been written.
+   *
+   * @return The length in bytes of the encoded message
+   */
+  public int finish() {
+    checkState(!isFinished, "message already finished");
+    checkState(openChild == null, "nested %s message not finished", prevTag);
+    checkState(tagsWritten == numTags, "wrote %s of %s tags", tagsWritten, numTags);
+
+    isFinished = true;
+    if (parent != null) {
+      parent.openChild = null;
+    }
+    return out.writerIndex() - start;
+  }
+
+  // Back-patch the tag and the offset of its value, which begins at the current writer index
+  private void beginValue(RtTag tag) {
+    checkNotNull(tag, "tag");
+    checkState(!isFinished, "message already finished");
+    checkState(openChild == null, "nested %s message not finished", prevTag);
+    checkState(tagsWritten < numTags, "all %s tags already written", numTags);
+    checkArgument(
+        prevTag == null || prevTag.isLessThan(tag), "%s must be written before %s", tag, prevTag
+    );
+
+    if (tagsWritten > 0) {
+      out.setIntLE(offsetsIndex + 4 * (tagsWritten - 1), out.writerIndex() - valuesIndex);
+    }
+    out.setInt(tagsIndex + 4 * tagsWritten, tag.wireEncoding());
+
+    tagsWritten++;
+    prevTag = tag;
+  }
+
+  private static void checkAligned(int length) {
+    checkArgument((length % 4) == 0, "value length %s not multiple of 4", length);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.protocol.RtConstants.NONCE_LENGTH;
+import static nearenough.util.Preconditions.checkArgument;
+import static nearenough.util.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import nearenough.util.BytesUtil;
+
+/**
+ * A client request encoded once, ahead of time, with a placeholder nonce.
+ * <p>
+ * Every request differs only in its 64-byte nonce (NONC) value; the header, offsets, tags, and
+ * padding are identical. A template holds that fixed encoding and writes complete requests from
+ * it, or patches just the nonce of a request already written into a reused buffer.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class RtRequestTemplate {
+
+  private final byte[] encoded;
+  private final int nonceIndex;
+
+  /**
+   * Create a template for a padded request of at least {@link RtConstants#MIN_REQUEST_LENGTH}
+   * bytes containing a single nonce (NONC) tag.
+   */
+  public RtRequestTemplate() {
+    RtMessage request = RtMessage.builder()
+        .addPadding(true)
+        .add(RtTag.NONC, new byte[NONCE_LENGTH])
+        .build();
+
+    this.encoded = RtWire.toBytes(request);
+
+    RtMessageReader reader = new RtMessageReader().reset(ByteBuffer.wrap(encoded));
+    this.nonceIndex = reader.valueIndex(reader.indexOf(RtTag.NONC));
+  }
+
+  /**
+   * @return Length in bytes of every request written by this template
+   */
+  public int length() {
+    return encoded.length;
+  }
+
+  /**
+   * Write a complete request containing {@code nonce} to {@code out} at its writer index,
+   * expanding {@code out} if needed. The writer index is advanced past the request.
+   *
+   * @return The number of bytes written, equal to {@link #length()}
+   */
+  public int writeTo(byte[] nonce, ByteBuf out) {
+    checkNonce(nonce);
+    checkNotNull(out, "out");
+
+    int start = out.writerIndex();
+    out.writeBytes(encoded);
+    out.setBytes(start + nonceIndex, nonce);
+    return encoded.length;
+  }
+
+  /**
+   * Write a complete request containing {@code nonce} to {@code out} at its position. The
+   * position is advanced past the request.
+   *
+   * @return The number of bytes written, equal to {@link #length()}
+   * @throws BufferOverflowException if fewer than {@link #length()} bytes remain in {@code out}
+   */
+  public int writeTo(byte[] nonce, ByteBuffer out) {
+    checkNonce(nonce);
+    checkNotNull(out, "out");
+
+    int start = out.position();
+    out.put(encoded);
+    patchNonce(nonce, out, start);
+    return encoded.length;
+  }
+
+  /**
+   * Replace the nonce of a request previously written by this template that begins at index
+   * {@code start} of {@code request}. Only the nonce's bytes are modified; indices are not.
+   */
+  public void patchNonce(byte[] nonce, ByteBuf request, int start) {
+    checkNonce(nonce);
+    checkNotNull(request, "request");
+
+    request.setBytes(start + nonceIndex, nonce);
+  }
+
+  /**
+   * Replace the nonce of a request previously written by this template that begins at index
+   * {@code start} of {@code request}. Only the nonce's bytes are modified; the position and limit
+   * of {@code request} are not.
+   */
+  public void patchNonce(byte[] nonce, ByteBuffer request, int start) {
+    checkNonce(nonce);
+    checkNotNull(request, "request");
+
+    BytesUtil.putBytes(request, start + nonceIndex, nonce, 0, NONCE_LENGTH);
+  }
+
+  private static void checkNonce(byte[] nonce) {
+    checkNotNull(nonce, "nonce");
+    checkArgument(nonce.length == NONCE_LENGTH, "invalid nonce length");
+  }
+}
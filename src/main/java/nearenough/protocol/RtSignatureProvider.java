@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import java.security.InvalidKeyException;
+import java.security.Signature;
+
+/**
+ * A source of Ed25519 signature engines for {@link RtEd25519.Signer} and {@link
+ * RtEd25519.Verifier}.
+ * <p>
+ * Three providers are built in: {@code "nearenough"}, which verifies with this library's own
+ * implementation, {@code "i2p"}, backed by the {@code net.i2p.crypto:eddsa} library, and {@code
+ * "jdk"}, backed by the JDK's own {@code Ed25519} algorithm (Java 15 and later).
+ * Further providers may be registered with {@link java.util.ServiceLoader}. {@link
+ * RtEd25519#provider()} describes how the provider in use is chosen.
+ */
+public interface RtSignatureProvider {
+
+  /**
+   * @return The name that selects this provider through {@link RtEd25519#PROVIDER_PROPERTY}
+   */
+  String name();
+
+  /**
+   * @return {@code True} if this provider can be used on the running JVM
+   */
+  boolean isAvailable();
+
+  /**
+   * @param seed A byte[32] seed from which the private key is derived as described in RFC 8032
+   * @return A {@link Signature} initialized for signing with the private key derived from {@code
+   * seed}
+   */
+  Signature newSigner(byte[] seed) throws InvalidKeyException;
+
+  /**
+   * @param seed A byte[32] seed from which the private key is derived as described in RFC 8032
+   * @return A byte[32] containing the public key corresponding to the private key derived from
+   * {@code seed}
+   */
+  byte[] publicKey(byte[] seed) throws InvalidKeyException;
+
+  /**
+   * @param publicKey A byte[32] containing an Ed25519 public key
+   * @return A {@link Signature} initialized for verifying signatures made by {@code publicKey}
+   */
+  Signature newVerifier(byte[] publicKey) throws InvalidKeyException;
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+/**
+ * Result codes of validating a Roughtime message without throwing. Every failure other than
+ * {@link #NESTING_TOO_DEEP} corresponds to one of the
+ * {@link nearenough.protocol.exceptions.InvalidRoughTimeMessage} subclasses thrown when parsing or
+ * verifying the same message, and is available from the exception's {@code status()}.
+ */
+public enum RtStatus {
+
+  /** The message is well-formed */
+  OK,
+
+  /** Readable message bytes &lt;4, or too few for the number of tags */
+  MESSAGE_TOO_SHORT,
+
+  /** Message length is not a multiple of 4 */
+  MESSAGE_UNALIGNED,
+
+  /** Invalid num_tags value */
+  INVALID_NUM_TAGS,
+
+  /** A tag's value offset is not a multiple of 4 */
+  TAG_OFFSET_UNALIGNED,
+
+  /** A tag's offset is out of bounds (outside message boundary) */
+  TAG_OFFSET_OVERFLOW,
+
+  /** A numeric tag value is not recognized */
+  INVALID_TAG,
+
+  /** Tags are not in strictly increasing order */
+  TAGS_NOT_INCREASING,
+
+  /** Nested messages exceed the maximum supported depth */
+  NESTING_TOO_DEEP,
+
+  /** A required tag is not present in the message */
+  MISSING_TAG,
+
+  /** A tag's value is not the length required by its type */
+  INVALID_VALUE_LENGTH,
+
+  /** A signature doesn't verify */
+  SIGNATURE_INVALID,
+
+  /** The response's Merkle tree is invalid */
+  MERKLE_TREE_INVALID,
+
+  /** The midpoint lies outside the delegation's bounds, or the bounds are invalid */
+  MIDPOINT_INVALID,
+
+  /** Invalid for a reason not covered by a more specific status */
+  INVALID_MESSAGE;
+
+  /**
+   * @return True if this status indicates a well-formed message
+   */
+  public boolean isOk() {
+    return this == OK;
+  }
+}
@@ -17,8 +17,7 @@ package nearenough.protocol;
 
 import static nearenough.util.Preconditions.checkNotNull;
 
-import io.netty.util.collection.IntObjectHashMap;
-import io.netty.util.collection.IntObjectMap;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Set;
 import nearenough.protocol.exceptions.InvalidTagException;
@@ -43,16 +42,66 @@ public enum RtTag {
   SIG('S', 'I', 'G', 0x00),
   SREP('S', 'R', 'E', 'P');
 
-  // Primitive collection eliminates boxing in fromUnsignedInt which is a hot method
-  private static final IntObjectMap<RtTag> ENCODING_TO_TAG = new IntObjectHashMap<>(values().length);
-
   // Tags for which values are themselves RtMessages
   private static final Set<RtTag> NESTED_TAGS = EnumSet.of(CERT, DELE, SREP);
 
+  // All tags in the order they appear on the wire, computed once
+  private static final RtTag[] WIRE_ORDER = values();
+
+  /**
+   * Number of defined tags. Arrays indexed by {@link #ordinal()} have this length.
+   */
+  public static final int COUNT = WIRE_ORDER.length;
+
+  // Perfect hash of wire encodings: (wireEncoding * HASH_MULTIPLIER) >>> HASH_SHIFT is distinct
+  // for every tag. Found at class initialization so that adding a tag needs no new constants.
+  private static final int HASH_SHIFT;
+  private static final int HASH_MULTIPLIER;
+  private static final RtTag[] HASH_TABLE;
+
   static {
-    for (RtTag rtTag : values()) {
-      ENCODING_TO_TAG.put(rtTag.wireEncoding(), rtTag);
+    Arrays.sort(WIRE_ORDER, (a, b) -> Integer.compareUnsigned(a.valueLE, b.valueLE));
+
+    int bits = 32 - Integer.numberOfLeadingZeros(COUNT - 1);
+    int multiplier = findHashMultiplier(32 - bits);
+    while (multiplier == 0) {
+      bits++;
+      multiplier = findHashMultiplier(32 - bits);
+    }
+
+    HASH_SHIFT = 32 - bits;
+    HASH_MULTIPLIER = multiplier;
+    HASH_TABLE = new RtTag[1 << bits];
+    for (RtTag tag : WIRE_ORDER) {
+      HASH_TABLE[(tag.wireEncoding * multiplier) >>> HASH_SHIFT] = tag;
+    }
+  }
+
+  // Smallest odd multiplier giving every tag its own slot, or 0 if there is none worth searching
+  private static int findHashMultiplier(int shift) {
+    boolean[] used = new boolean[1 << (32 - shift)];
+
+    outer:
+    for (int multiplier = 1; multiplier < (1 << 20); multiplier += 2) {
+      Arrays.fill(used, false);
+      for (RtTag tag : WIRE_ORDER) {
+        int slot = (tag.wireEncoding * multiplier) >>> shift;
+        if (used[slot]) {
+          continue outer;
+        }
+        used[slot] = true;
+      }
+      return multiplier;
     }
+    return 0;
+  }
+
+  /**
+   * @return The tag at position {@code idx} when all tags are sorted in wire order. The shared
+   * array is not exposed to avoid a defensive copy on this hot path.
+   */
+  /*package*/ static RtTag inWireOrder(int idx) {
+    return WIRE_ORDER[idx];
   }
 
   /**
@@ -64,13 +113,13 @@ public enum RtTag {
    * if no mapping exists.
    */
   public static RtTag fromUnsignedInt(int tagValue) throws InvalidTagException {
-    RtTag tag = ENCODING_TO_TAG.get(tagValue);
+    RtTag tag = lookup(tagValue);
 
     if (tag != null) {
       return tag;
     } else {
       //noinspection NumericCastThatLosesPrecision
-      String exMsg = String.format(
+      throw new InvalidTagException(
           "'%c%c%c%c' (0x%08x)",
           (char) (tagValue >> 24 & 0xff),
           (char) (tagValue >> 16 & 0xff),
@@ -78,10 +127,19 @@ public enum RtTag {
           (char) (tagValue & 0xff),
           tagValue
       );
-      throw new InvalidTagException(exMsg);
     }
   }
 
+  /**
+   * @return The {@link RtTag} that corresponds to the provided uint32 value, or {@code null} if
+   * no mapping exists.
+   */
+  /*package*/ static RtTag lookup(int tagValue) {
+    // One multiply, one load, and one compare to reject values that merely share a slot
+    RtTag tag = HASH_TABLE[(tagValue * HASH_MULTIPLIER) >>> HASH_SHIFT];
+    return ((tag != null) && (tag.wireEncoding == tagValue)) ? tag : null;
+  }
+
   private final int wireEncoding;
   private final int valueLE;
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.util.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import java.nio.ByteBuffer;
+import nearenough.util.BytesUtil;
+
+/**
+ * Structural validation of raw Roughtime messages that neither allocates nor throws.
+ * <p>
+ * Performs every check {@link RtMessageReader} does (length, alignment, num_tags, offset
+ * alignment and bounds, known and strictly increasing tags) and then recurses into the values of
+ * {@link RtTag#isNested() nested} tags. Intended for discarding garbage or spoofed datagrams
+ * before paying for a full parse.
+ * <p>
+ * The overloads accepting {@code skipUnknownTags} match a reader configured with
+ * {@link RtMessageReader#skipUnknownTags(boolean)}: unknown tags must still be in order and in
+ * bounds, but are not otherwise an error.
+ */
+public final class RtValidator {
+
+  /**
+   * Deepest nesting accepted. Responses nest two levels deep (CERT containing DELE); anything
+   * much deeper is hostile input that would otherwise drive unbounded recursion.
+   */
+  public static final int MAX_NESTING_DEPTH = 4;
+
+  /**
+   * Validate the readable bytes of {@code msg}. The buffer's indices are not modified. Composite
+   * buffers of more than one component are the exception to allocation-free validation, as they
+   * must first be merged into a single NIO buffer.
+   *
+   * @return {@link RtStatus#OK} if {@code msg} is a well-formed message, otherwise the first
+   * problem found
+   */
+  public static RtStatus validate(ByteBuf msg) {
+    return validate(msg, false);
+  }
+
+  /**
+   * As {@link #validate(ByteBuf)}, tolerating unknown tags if {@code skipUnknownTags} is true.
+   */
+  public static RtStatus validate(ByteBuf msg, boolean skipUnknownTags) {
+    checkNotNull(msg, "msg");
+
+    int start = msg.readerIndex();
+    int len = msg.readableBytes();
+
+    // Single-component buffers expose a cached NIO view, avoiding any per-call allocation
+    ByteBuffer nioBuf = (msg.nioBufferCount() == 1) ? msg.internalNioBuffer(start, len)
+                                                    : msg.nioBuffer(start, len);
+
+    return validate(nioBuf, nioBuf.position(), nioBuf.limit(), 0, skipUnknownTags);
+  }
+
+  /**
+   * Validate the remaining bytes of {@code msg}, which can be direct or heap based. The buffer's
+   * position, limit, and byte order are not modified.
+   *
+   * @return {@link RtStatus#OK} if {@code msg} is a well-formed message, otherwise the first
+   * problem found
+   */
+  public static RtStatus validate(ByteBuffer msg) {
+    return validate(msg, false);
+  }
+
+  /**
+   * As {@link #validate(ByteBuffer)}, tolerating unknown tags if {@code skipUnknownTags} is true.
+   */
+  public static RtStatus validate(ByteBuffer msg, boolean skipUnknownTags) {
+    checkNotNull(msg, "msg");
+
+    return validate(msg, msg.position(), msg.limit(), 0, skipUnknownTags);
+  }
+
+  private static RtStatus validate(
+      ByteBuffer buf, int start, int end, int depth, boolean skipUnknownTags) {
+    int len = end - start;
+
+    if (len < 4) {
+      return RtStatus.MESSAGE_TOO_SHORT;
+    }
+    if ((len % 4) != 0) {
+      return RtStatus.MESSAGE_UNALIGNED;
+    }
+
+    long readNumTags = BytesUtil.getUnsignedIntLE(buf, start);
+    if (readNumTags > 0xffffL) {
+      return RtStatus.INVALID_NUM_TAGS;
+    }
+
+    int numTags = (int) readNumTags;
+    if (numTags == 0) {
+      return RtStatus.OK;
+    }
+    if (len < 4 + 4 * ((numTags - 1) + numTags)) {
+      return RtStatus.MESSAGE_TOO_SHORT;
+    }
+
+    int numOffsets = numTags - 1;
+    int offsetsStart = start + 4;
+    int tagsStart = offsetsStart + (4 * numOffsets);
+    int valuesStart = tagsStart + (4 * numTags);
+    int endOfPayload = (end - offsetsStart) - (4 * numOffsets);
+
+    long prevOffset = 0;
+    for (int i = 0; i < numOffsets; i++) {
+      long offset = BytesUtil.getUnsignedIntLE(buf, offsetsStart + (4 * i));
+
+      if ((offset % 4) != 0) {
+        return RtStatus.TAG_OFFSET_UNALIGNED;
+      }
+      if ((offset > endOfPayload) || (offset < prevOffset)) {
+        return RtStatus.TAG_OFFSET_OVERFLOW;
+      }
+      prevOffset = offset;
+    }
+    if (valuesStart + prevOffset > end) {
+      return RtStatus.TAG_OFFSET_OVERFLOW;
+    }
+
+    int prevValueLE = 0;
+    for (int i = 0; i < numTags; i++) {
+      int currTag = BytesUtil.getInt(buf, tagsStart + (4 * i));
+      int currValueLE = Integer.reverseBytes(currTag);
+
+      if (!skipUnknownTags && (RtTag.lookup(currTag) == null)) {
+        return RtStatus.INVALID_TAG;
+      }
+      if ((i > 0) && (Integer.compareUnsigned(prevValueLE, currValueLE) >= 0)) {
+        return RtStatus.TAGS_NOT_INCREASING;
+      }
+      prevValueLE = currValueLE;
+    }
+
+    // Structure of this message is sound; now check any nested messages
+    for (int i = 0; i < numTags; i++) {
+      RtTag tag = RtTag.lookup(BytesUtil.getInt(buf, tagsStart + (4 * i)));
+      if ((tag == null) || !tag.isNested()) {
+        continue;
+      }
+      if (depth == MAX_NESTING_DEPTH) {
+        return RtStatus.NESTING_TOO_DEEP;
+      }
+
+      int valueStart = valuesStart + valueOffset(buf, offsetsStart, i);
+      int valueEnd = (i == numOffsets) ? end
+                                       : valuesStart + valueOffset(buf, offsetsStart, i + 1);
+
+      RtStatus nestedStatus = validate(buf, valueStart, valueEnd, depth + 1, skipUnknownTags);
+      if (nestedStatus != RtStatus.OK) {
+        return nestedStatus;
+      }
+    }
+
+    return RtStatus.OK;
+  }
+
+  // Offset of value idx relative to the start of the values; value 0 has no offset field
+  private static int valueOffset(ByteBuffer buf, int offsetsStart, int idx) {
+    return (idx == 0) ? 0 : BytesUtil.getIntLE(buf, offsetsStart + (4 * (idx - 1)));
+  }
+
+  // Utility class
+  private RtValidator() {
+  }
+}
@@ -20,7 +20,10 @@ import static nearenough.util.Preconditions.checkState;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
-import java.util.Iterator;
+import io.netty.buffer.CompositeByteBuf;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Map;
 
 /**
@@ -46,14 +49,10 @@ public final class RtWire {
     checkNotNull(msg, "msg");
     checkNotNull(allocator, "allocator");
 
-    int encodedSize = computeEncodedSize(msg.mapping());
-    ByteBuf buf = allocator.buffer(encodedSize);
+    ByteBuf buf = allocator.buffer(encodedSize(msg));
     checkState(buf.writableBytes() >= 4, "nonsensical output buf size %s", buf.writableBytes());
 
-    writeNumTags(msg, buf);
-    writeOffsets(msg, buf);
-    writeTags(msg, buf);
-    writeValues(msg, buf);
+    writeTo(msg, buf);
 
     // Output buffer should have been completely used
     checkState(buf.writableBytes() == 0, "message was not completely written");
@@ -61,14 +60,189 @@ public final class RtWire {
     return buf;
   }
 
+  /**
+   * Encode the given message for network transmission into a new {@code byte[]}. Unlike {@link
+   * #toWire(RtMessage)}, does not require Netty.
+   * <p>
+   * The encoding is memoized by {@code msg}, so encoding the same message again, with this or any
+   * other method of this class, copies the bytes rather than re-encoding them.
+   *
+   * @return A {@code byte[]} containing this message encoded for transmission.
+   */
+  public static byte[] toBytes(RtMessage msg) {
+    checkNotNull(msg, "msg");
+
+    return msg.encoded().clone();
+  }
+
+  /**
+   * Encode the given message for network transmission into {@code out} at its writer index,
+   * expanding {@code out} if needed. The writer index is advanced past the encoded message.
+   *
+   * @return The number of bytes written, equal to {@link #encodedSize(RtMessage)}
+   */
+  public static int writeTo(RtMessage msg, ByteBuf out) {
+    checkNotNull(msg, "msg");
+    checkNotNull(out, "out");
+
+    byte[] encoded = msg.encodedIfPresent();
+    if (encoded != null) {
+      out.writeBytes(encoded);
+      return encoded.length;
+    }
+
+    int encodedSize = encodedSize(msg);
+    out.ensureWritable(encodedSize);
+
+    writeNumTags(msg, out);
+    writeOffsets(msg, out);
+    writeTags(msg, out);
+    writeValues(msg, out);
+
+    return encodedSize;
+  }
+
+  /**
+   * Encode the given message for network transmission into {@code out}, which can be direct or
+   * heap based, at its position. The position is advanced past the encoded message; the byte
+   * order of {@code out} is not modified.
+   *
+   * @return The number of bytes written, equal to {@link #encodedSize(RtMessage)}
+   * @throws BufferOverflowException if fewer than {@link #encodedSize(RtMessage)} bytes remain in
+   * {@code out}, in which case {@code out} is unchanged
+   */
+  public static int writeTo(RtMessage msg, ByteBuffer out) {
+    checkNotNull(msg, "msg");
+    checkNotNull(out, "out");
+
+    int encodedSize = encodedSize(msg);
+    if (out.remaining() < encodedSize) {
+      throw new BufferOverflowException();
+    }
+
+    byte[] encoded = msg.encodedIfPresent();
+    if (encoded != null) {
+      out.put(encoded);
+      return encodedSize;
+    }
+
+    ByteOrder origOrder = out.order();
+    out.order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      writeHeader(msg, out);
+      for (int i = 0; i < msg.numTags(); i++) {
+        msg.writeValue(msg.tagAt(i), out);
+      }
+    } finally {
+      out.order(origOrder);
+    }
+
+    return encodedSize;
+  }
+
+  /**
+   * Encode the given message for gathering writes using the system default ByteBuf allocator.
+   *
+   * @see #toWireComposite(RtMessage, ByteBufAllocator)
+   */
+  public static CompositeByteBuf toWireComposite(RtMessage msg) {
+    return toWireComposite(msg, ByteBufAllocator.DEFAULT);
+  }
+
+  /**
+   * Encode the given message for gathering writes. Only the header (num_tags, offsets, and tags)
+   * is written to a newly allocated buffer; each value is a further component that shares the
+   * message's storage rather than being copied. Padding shares a single read-only zero buffer.
+   * <p>
+   * Values of views are retained by the composite, which therefore remains valid after the view
+   * is closed. Values of eager messages are not copied, so must not be modified while the
+   * composite is in use.
+   *
+   * @return A {@link CompositeByteBuf} containing this message encoded for transmission.
+   */
+  public static CompositeByteBuf toWireComposite(RtMessage msg, ByteBufAllocator allocator) {
+    checkNotNull(msg, "msg");
+    checkNotNull(allocator, "allocator");
+
+    ByteBuf header = allocator.buffer(computeEncodedSize(msg.numTags(), 0));
+    writeNumTags(msg, header);
+    writeOffsets(msg, header);
+    writeTags(msg, header);
+
+    CompositeByteBuf out = allocator.compositeBuffer(1 + msg.numTags());
+    out.addComponent(true, header);
+    try {
+      for (int i = 0; i < msg.numTags(); i++) {
+        out.addComponent(true, msg.retainedValue(msg.tagAt(i)));
+      }
+      return out;
+
+    } catch (RuntimeException e) {
+      out.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Encode the given message for a {@link java.nio.channels.GatheringByteChannel} write, such as
+   * {@link java.nio.channels.DatagramChannel#write(ByteBuffer[]) DatagramChannel.write} on a
+   * connected channel. The first buffer is a newly allocated header (num_tags, offsets, and tags);
+   * the rest are read-only buffers sharing the storage of each value in wire order.
+   * <p>
+   * For views the value buffers are only valid until the view is {@link RtMessage#close()
+   * closed}.
+   *
+   * @return The encoded message as a header buffer followed by one buffer per value
+   */
+  public static ByteBuffer[] toNioBuffers(RtMessage msg) {
+    checkNotNull(msg, "msg");
+
+    ByteBuffer header = ByteBuffer.allocate(computeEncodedSize(msg.numTags(), 0))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    writeHeader(msg, header);
+    header.flip();
+
+    ByteBuffer[] out = new ByteBuffer[1 + msg.numTags()];
+    out[0] = header;
+    for (int i = 0; i < msg.numTags(); i++) {
+      out[i + 1] = msg.nioBuffer(msg.tagAt(i));
+    }
+    return out;
+  }
+
+  /**
+   * @return The size in bytes of the on-the-wire encoding of {@code msg}
+   */
+  public static int encodedSize(RtMessage msg) {
+    checkNotNull(msg, "msg");
+
+    byte[] encoded = msg.encodedIfPresent();
+    if (encoded != null) {
+      return encoded.length;
+    }
+    return computeEncodedSize(msg.numTags(), msg.valuesLength());
+  }
+
   /**
    * @return The size in bytes of the on-the-wire encoding of the provided {@code map}.
    */
   /*package*/ static int computeEncodedSize(Map<RtTag, byte[]> map) {
+    int valuesSum = 0;
+    for (byte[] value : map.values()) {
+      valuesSum += value.length;
+    }
+
+    return computeEncodedSize(map.size(), valuesSum);
+  }
+
+  /**
+   * @return The size in bytes of the on-the-wire encoding of a message with {@code numTags} tags
+   * whose values total {@code valuesSum} bytes.
+   */
+  /*package*/ static int computeEncodedSize(int numTags, int valuesSum) {
     int numTagsSum = 4;
-    int tagsSum = 4 * map.size();
-    int offsetsSum = map.size() < 2 ? 0 : (4 * (map.size() - 1));
-    int valuesSum = map.values().stream().mapToInt(value -> value.length).sum();
+    int tagsSum = 4 * numTags;
+    int offsetsSum = numTags < 2 ? 0 : (4 * (numTags - 1));
 
     return numTagsSum + tagsSum + offsetsSum + valuesSum;
   }
@@ -82,26 +256,41 @@ public final class RtWire {
       return;
     }
 
-    Iterator<byte[]> iter = msg.mapping().values().iterator();
-    int offsetSum = iter.next().length;
+    int offsetSum = msg.valueLength(msg.tagAt(0));
 
-    while (iter.hasNext()) {
+    for (int i = 1; i < msg.numTags(); i++) {
       buf.writeIntLE(offsetSum);
-      offsetSum += iter.next().length;
+      offsetSum += msg.valueLength(msg.tagAt(i));
     }
 
     checkState(offsetSum >= 0);
   }
 
   private static void writeTags(RtMessage msg, ByteBuf buf) {
-    for (RtTag rtTag : msg.mapping().keySet()) {
-      buf.writeInt(rtTag.wireEncoding());
+    for (int i = 0; i < msg.numTags(); i++) {
+      buf.writeInt(msg.tagAt(i).wireEncoding());
+    }
+  }
+
+  // Writes num_tags, offsets, and tags to out, which must be little-endian
+  private static void writeHeader(RtMessage msg, ByteBuffer out) {
+    out.putInt(msg.numTags());
+
+    int offsetSum = 0;
+    for (int i = 0; i < msg.numTags(); i++) {
+      if (i > 0) {
+        out.putInt(offsetSum);
+      }
+      offsetSum += msg.valueLength(msg.tagAt(i));
+    }
+    for (int i = 0; i < msg.numTags(); i++) {
+      out.putInt(msg.tagAt(i).valueLE());
     }
   }
 
   private static void writeValues(RtMessage msg, ByteBuf buf) {
-    for (byte[] bytes : msg.mapping().values()) {
-      buf.writeBytes(bytes);
+    for (int i = 0; i < msg.numTags(); i++) {
+      msg.writeValue(msg.tagAt(i), buf);
     }
   }
 
@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Invalid num_tags value in request
  */
 public class InvalidNumTagsException extends InvalidRoughTimeMessage {
 
   public InvalidNumTagsException(String message) {
-    super(message);
+    super(RtStatus.INVALID_NUM_TAGS, message);
+  }
+
+  public InvalidNumTagsException(String template, Object... args) {
+    super(RtStatus.INVALID_NUM_TAGS, template, args);
   }
 }
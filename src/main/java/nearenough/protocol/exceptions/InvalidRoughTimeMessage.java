@@ -15,9 +15,60 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
+/**
+ * Base of all exceptions thrown for malformed or unverifiable Roughtime messages.
+ * <p>
+ * Malformed messages are expected input (garbage, spoofed, or truncated datagrams), so these
+ * exceptions are cheap to create: no stack trace is captured, and a message given as a template
+ * and arguments is only formatted with {@link String#format} when {@link #getMessage()} is first
+ * called. Each exception also carries the {@link RtStatus} of its failure for callers that
+ * dispatch on codes rather than types.
+ */
 public class InvalidRoughTimeMessage extends RuntimeException {
 
+  private final RtStatus status;
+
+  private final String template;
+  private final Object[] args;
+
+  // Formatted message, cached by whichever thread formats it first. Strings are immutable, so a
+  // racing thread either sees the cached message or formats an identical one itself.
+  private String message;
+
   public InvalidRoughTimeMessage(String message) {
-    super(message);
+    this(RtStatus.INVALID_MESSAGE, message);
+  }
+
+  protected InvalidRoughTimeMessage(RtStatus status, String message) {
+    super(null, null, false, false);
+    this.status = status;
+    this.template = message;
+    this.args = null;
+  }
+
+  protected InvalidRoughTimeMessage(RtStatus status, String template, Object... args) {
+    super(null, null, false, false);
+    this.status = status;
+    this.template = template;
+    this.args = args;
+  }
+
+  /**
+   * @return The status code corresponding to this failure, never {@link RtStatus#OK}
+   */
+  public RtStatus status() {
+    return status;
+  }
+
+  @Override
+  public String getMessage() {
+    String result = message;
+    if (result == null) {
+      result = (args == null) ? template : String.format(template, args);
+      message = result;
+    }
+    return result;
   }
 }
@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Numeric tag value is not recognized
  */
 public class InvalidTagException extends InvalidRoughTimeMessage {
 
   public InvalidTagException(String message) {
-    super(message);
+    super(RtStatus.INVALID_TAG, message);
+  }
+
+  public InvalidTagException(String template, Object... args) {
+    super(RtStatus.INVALID_TAG, template, args);
   }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol.exceptions;
+
+import nearenough.protocol.RtStatus;
+
+/**
+ * A tag's value is not the length required by its type
+ */
+public class InvalidValueLengthException extends InvalidRoughTimeMessage {
+
+  public InvalidValueLengthException(String message) {
+    super(RtStatus.INVALID_VALUE_LENGTH, message);
+  }
+
+  public InvalidValueLengthException(String template, Object... args) {
+    super(RtStatus.INVALID_VALUE_LENGTH, template, args);
+  }
+}
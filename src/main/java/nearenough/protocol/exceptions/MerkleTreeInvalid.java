@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * The response's Merkle tree is invalid.
  */
 public class MerkleTreeInvalid extends InvalidRoughTimeMessage {
 
   public MerkleTreeInvalid(String message) {
-    super(message);
+    super(RtStatus.MERKLE_TREE_INVALID, message);
+  }
+
+  public MerkleTreeInvalid(String template, Object... args) {
+    super(RtStatus.MERKLE_TREE_INVALID, template, args);
   }
 }
@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Readable message bytes <4
  */
 public class MessageTooShortException extends InvalidRoughTimeMessage {
 
   public MessageTooShortException(String message) {
-    super(message);
+    super(RtStatus.MESSAGE_TOO_SHORT, message);
+  }
+
+  public MessageTooShortException(String template, Object... args) {
+    super(RtStatus.MESSAGE_TOO_SHORT, template, args);
   }
 }
@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Message length is not a multiple of 4
  */
 public class MessageUnalignedException extends InvalidRoughTimeMessage {
 
   public MessageUnalignedException(String message) {
-    super(message);
+    super(RtStatus.MESSAGE_UNALIGNED, message);
+  }
+
+  public MessageUnalignedException(String template, Object... args) {
+    super(RtStatus.MESSAGE_UNALIGNED, template, args);
   }
 }
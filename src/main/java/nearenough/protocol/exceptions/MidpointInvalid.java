@@ -15,9 +15,15 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 public class MidpointInvalid extends InvalidRoughTimeMessage {
 
   public MidpointInvalid(String message) {
-    super(message);
+    super(RtStatus.MIDPOINT_INVALID, message);
+  }
+
+  public MidpointInvalid(String template, Object... args) {
+    super(RtStatus.MIDPOINT_INVALID, template, args);
   }
 }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol.exceptions;
+
+import nearenough.protocol.RtStatus;
+
+/**
+ * A required tag is not present in the message
+ */
+public class MissingTagException extends InvalidRoughTimeMessage {
+
+  public MissingTagException(String message) {
+    super(RtStatus.MISSING_TAG, message);
+  }
+
+  public MissingTagException(String template, Object... args) {
+    super(RtStatus.MISSING_TAG, template, args);
+  }
+}
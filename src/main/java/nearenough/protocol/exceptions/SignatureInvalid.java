@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * The signature doesn't verify
  */
 public class SignatureInvalid extends InvalidRoughTimeMessage {
 
   public SignatureInvalid(String message) {
-    super(message);
+    super(RtStatus.SIGNATURE_INVALID, message);
+  }
+
+  public SignatureInvalid(String template, Object... args) {
+    super(RtStatus.SIGNATURE_INVALID, template, args);
   }
 }
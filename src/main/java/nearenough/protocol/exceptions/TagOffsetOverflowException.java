@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Tag's offset is out of bounds (outside message boundary)
  */
 public class TagOffsetOverflowException extends InvalidRoughTimeMessage {
 
   public TagOffsetOverflowException(String message) {
-    super(message);
+    super(RtStatus.TAG_OFFSET_OVERFLOW, message);
+  }
+
+  public TagOffsetOverflowException(String template, Object... args) {
+    super(RtStatus.TAG_OFFSET_OVERFLOW, template, args);
   }
 }
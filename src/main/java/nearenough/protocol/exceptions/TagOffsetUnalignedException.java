@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Tag's value offset is not a multiple of 4
  */
 public class TagOffsetUnalignedException extends InvalidRoughTimeMessage {
 
   public TagOffsetUnalignedException(String message) {
-    super(message);
+    super(RtStatus.TAG_OFFSET_UNALIGNED, message);
+  }
+
+  public TagOffsetUnalignedException(String template, Object... args) {
+    super(RtStatus.TAG_OFFSET_UNALIGNED, template, args);
   }
 }
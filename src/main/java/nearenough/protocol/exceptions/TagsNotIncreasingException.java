@@ -15,12 +15,18 @@
 
 package nearenough.protocol.exceptions;
 
+import nearenough.protocol.RtStatus;
+
 /**
  * Tags are not in strictly increasing order
  */
 public class TagsNotIncreasingException extends InvalidRoughTimeMessage {
 
   public TagsNotIncreasingException(String message) {
-    super(message);
+    super(RtStatus.TAGS_NOT_INCREASING, message);
+  }
+
+  public TagsNotIncreasingException(String template, Object... args) {
+    super(RtStatus.TAGS_NOT_INCREASING, template, args);
   }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.util;
+
+/**
+ * Multi-byte reads and writes of {@code byte[]} in either byte order, behind {@link BytesUtil}.
+ * <p>
+ * This Java 8 version assembles values from single bytes with shifts. The build also compiles a
+ * Java 9 version from {@code src/main/java9}, packaged under {@code META-INF/versions/9} of the
+ * multi-release JAR, that reads and writes through byte-array-view {@code VarHandle}s instead.
+ */
+/*package*/ final class ByteArrayAccess {
+
+  /*package*/ static int getInt(byte[] memory, int index) {
+    return (memory[index] & 0xff) << 24 |
+        (memory[index + 1] & 0xff) << 16 |
+        (memory[index + 2] & 0xff) << 8 |
+        memory[index + 3] & 0xff;
+  }
+
+  /*package*/ static int getIntLE(byte[] memory, int index) {
+    return memory[index] & 0xff |
+        (memory[index + 1] & 0xff) << 8 |
+        (memory[index + 2] & 0xff) << 16 |
+        (memory[index + 3] & 0xff) << 24;
+  }
+
+  /*package*/ static long getLong(byte[] memory, int index) {
+    return (memory[index] & 0xffL) << 56 |
+        (memory[index + 1] & 0xffL) << 48 |
+        (memory[index + 2] & 0xffL) << 40 |
+        (memory[index + 3] & 0xffL) << 32 |
+        (memory[index + 4] & 0xffL) << 24 |
+        (memory[index + 5] & 0xffL) << 16 |
+        (memory[index + 6] & 0xffL) << 8 |
+        memory[index + 7] & 0xffL;
+  }
+
+  /*package*/ static long getLongLE(byte[] memory, int index) {
+    return memory[index] & 0xffL |
+        (memory[index + 1] & 0xffL) << 8 |
+        (memory[index + 2] & 0xffL) << 16 |
+        (memory[index + 3] & 0xffL) << 24 |
+        (memory[index + 4] & 0xffL) << 32 |
+        (memory[index + 5] & 0xffL) << 40 |
+        (memory[index + 6] & 0xffL) << 48 |
+        (memory[index + 7] & 0xffL) << 56;
+  }
+
+  /*package*/ static void setInt(byte[] memory, int index, int value) {
+    memory[index] = (byte) (value >>> 24);
+    memory[index + 1] = (byte) (value >>> 16);
+    memory[index + 2] = (byte) (value >>> 8);
+    memory[index + 3] = (byte) value;
+  }
+
+  /*package*/ static void setIntLE(byte[] memory, int index, int value) {
+    memory[index] = (byte) value;
+    memory[index + 1] = (byte) (value >>> 8);
+    memory[index + 2] = (byte) (value >>> 16);
+    memory[index + 3] = (byte) (value >>> 24);
+  }
+
+  /*package*/ static void setLong(byte[] memory, int index, long value) {
+    memory[index] = (byte) (value >>> 56);
+    memory[index + 1] = (byte) (value >>> 48);
+    memory[index + 2] = (byte) (value >>> 40);
+    memory[index + 3] = (byte) (value >>> 32);
+    memory[index + 4] = (byte) (value >>> 24);
+    memory[index + 5] = (byte) (value >>> 16);
+    memory[index + 6] = (byte) (value >>> 8);
+    memory[index + 7] = (byte) value;
+  }
+
+  /*package*/ static void setLongLE(byte[] memory, int index, long value) {
+    memory[index] = (byte) value;
+    memory[index + 1] = (byte) (value >>> 8);
+    memory[index + 2] = (byte) (value >>> 16);
+    memory[index + 3] = (byte) (value >>> 24);
+    memory[index + 4] = (byte) (value >>> 32);
+    memory[index + 5] = (byte) (value >>> 40);
+    memory[index + 6] = (byte) (value >>> 48);
+    memory[index + 7] = (byte) (value >>> 56);
+  }
+
+  // Utility class
+  private ByteArrayAccess() {
+  }
+}
@@ -15,8 +15,19 @@
 
 package nearenough.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * Utility methods for working with {@code byte[]}. Extracted from Netty and EdDSA-Java.
+ * <p>
+ * The {@code byte[]} accessors delegate to a class with a Java 8 implementation and a Java 9
+ * implementation based on {@code VarHandle}s, selected by the multi-release JAR.
+ * <p>
+ * The {@link ByteBuffer} methods use absolute indices and never modify the buffer's position,
+ * limit, or byte order. Their results do not depend on the buffer's byte order: each is a single
+ * multi-byte access plus, when the buffer's order differs from the one requested, a {@link
+ * Integer#reverseBytes byte swap}, both of which the JIT compiles to single instructions.
  */
 public final class BytesUtil {
 
@@ -56,74 +67,97 @@ public final class BytesUtil {
   }
 
   public static int getInt(byte[] memory, int index) {
-    return (memory[index] & 0xff) << 24 |
-        (memory[index + 1] & 0xff) << 16 |
-        (memory[index + 2] & 0xff) << 8 |
-        memory[index + 3] & 0xff;
+    return ByteArrayAccess.getInt(memory, index);
   }
 
   public static int getIntLE(byte[] memory, int index) {
-    return memory[index] & 0xff |
-        (memory[index + 1] & 0xff) << 8 |
-        (memory[index + 2] & 0xff) << 16 |
-        (memory[index + 3] & 0xff) << 24;
+    return ByteArrayAccess.getIntLE(memory, index);
   }
 
   public static long getLong(byte[] memory, int index) {
-    return (memory[index] & 0xffL) << 56 |
-        (memory[index + 1] & 0xffL) << 48 |
-        (memory[index + 2] & 0xffL) << 40 |
-        (memory[index + 3] & 0xffL) << 32 |
-        (memory[index + 4] & 0xffL) << 24 |
-        (memory[index + 5] & 0xffL) << 16 |
-        (memory[index + 6] & 0xffL) << 8 |
-        memory[index + 7] & 0xffL;
+    return ByteArrayAccess.getLong(memory, index);
   }
 
   public static long getLongLE(byte[] memory, int index) {
-    return memory[index] & 0xffL |
-        (memory[index + 1] & 0xffL) << 8 |
-        (memory[index + 2] & 0xffL) << 16 |
-        (memory[index + 3] & 0xffL) << 24 |
-        (memory[index + 4] & 0xffL) << 32 |
-        (memory[index + 5] & 0xffL) << 40 |
-        (memory[index + 6] & 0xffL) << 48 |
-        (memory[index + 7] & 0xffL) << 56;
+    return ByteArrayAccess.getLongLE(memory, index);
+  }
+
+  public static int getInt(ByteBuffer buf, int index) {
+    int value = buf.getInt(index);
+    return (buf.order() == ByteOrder.BIG_ENDIAN) ? value : Integer.reverseBytes(value);
+  }
+
+  public static int getIntLE(ByteBuffer buf, int index) {
+    int value = buf.getInt(index);
+    return (buf.order() == ByteOrder.LITTLE_ENDIAN) ? value : Integer.reverseBytes(value);
+  }
+
+  public static long getUnsignedIntLE(ByteBuffer buf, int index) {
+    return getIntLE(buf, index) & 0xffffffffL;
+  }
+
+  public static long getLongLE(ByteBuffer buf, int index) {
+    long value = buf.getLong(index);
+    return (buf.order() == ByteOrder.LITTLE_ENDIAN) ? value : Long.reverseBytes(value);
+  }
+
+  /**
+   * Copy {@code length} bytes of {@code src} starting at absolute {@code index} into {@code dst}
+   * at {@code dstIndex}, without modifying the position or limit of {@code src} and without
+   * allocating.
+   */
+  public static void getBytes(ByteBuffer src, int index, byte[] dst, int dstIndex, int length) {
+    Preconditions.checkPositionIndexes(index, index + length, src.limit());
+
+    if (src.hasArray()) {
+      System.arraycopy(src.array(), src.arrayOffset() + index, dst, dstIndex, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dst[dstIndex + i] = src.get(index + i);
+      }
+    }
+  }
+
+  /**
+   * Copy {@code length} bytes of {@code src} starting at {@code srcIndex} into {@code dst} at
+   * absolute {@code index}, without modifying the position or limit of {@code dst} and without
+   * allocating.
+   */
+  public static void putBytes(ByteBuffer dst, int index, byte[] src, int srcIndex, int length) {
+    Preconditions.checkPositionIndexes(index, index + length, dst.limit());
+
+    if (dst.hasArray()) {
+      System.arraycopy(src, srcIndex, dst.array(), dst.arrayOffset() + index, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dst.put(index + i, src[srcIndex + i]);
+      }
+    }
   }
 
   public static void setInt(byte[] memory, int index, int value) {
-    memory[index] = (byte) (value >>> 24);
-    memory[index + 1] = (byte) (value >>> 16);
-    memory[index + 2] = (byte) (value >>> 8);
-    memory[index + 3] = (byte) value;
+    ByteArrayAccess.setInt(memory, index, value);
   }
 
   public static void setIntLE(byte[] memory, int index, int value) {
-    memory[index] = (byte) value;
-    memory[index + 1] = (byte) (value >>> 8);
-    memory[index + 2] = (byte) (value >>> 16);
-    memory[index + 3] = (byte) (value >>> 24);
+    ByteArrayAccess.setIntLE(memory, index, value);
   }
 
   public static void setLong(byte[] memory, int index, long value) {
-    memory[index] = (byte) (value >>> 56);
-    memory[index + 1] = (byte) (value >>> 48);
-    memory[index + 2] = (byte) (value >>> 40);
-    memory[index + 3] = (byte) (value >>> 32);
-    memory[index + 4] = (byte) (value >>> 24);
-    memory[index + 5] = (byte) (value >>> 16);
-    memory[index + 6] = (byte) (value >>> 8);
-    memory[index + 7] = (byte) value;
+    ByteArrayAccess.setLong(memory, index, value);
   }
 
   public static void setLongLE(byte[] memory, int index, long value) {
-    memory[index] = (byte) value;
-    memory[index + 1] = (byte) (value >>> 8);
-    memory[index + 2] = (byte) (value >>> 16);
-    memory[index + 3] = (byte) (value >>> 24);
-    memory[index + 4] = (byte) (value >>> 32);
-    memory[index + 5] = (byte) (value >>> 40);
-    memory[index + 6] = (byte) (value >>> 48);
-    memory[index + 7] = (byte) (value >>> 56);
+    ByteArrayAccess.setLongLE(memory, index, value);
+  }
+
+  public static void setIntLE(ByteBuffer buf, int index, int value) {
+    int ordered = (buf.order() == ByteOrder.LITTLE_ENDIAN) ? value : Integer.reverseBytes(value);
+    buf.putInt(index, ordered);
+  }
+
+  public static void setLongLE(ByteBuffer buf, int index, long value) {
+    long ordered = (buf.order() == ByteOrder.LITTLE_ENDIAN) ? value : Long.reverseBytes(value);
+    buf.putLong(index, ordered);
   }
 }
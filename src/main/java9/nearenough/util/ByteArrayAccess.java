@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Multi-byte reads and writes of {@code byte[]} in either byte order, behind {@link BytesUtil}.
+ * <p>
+ * This Java 9 version, packaged under {@code META-INF/versions/9} of the multi-release JAR,
+ * accesses the array through byte-array-view {@link VarHandle}s, which the JIT compiles to a single
+ * load or store plus a byte swap when the requested order is not the platform's.
+ */
+/*package*/ final class ByteArrayAccess {
+
+  private static final VarHandle INT_BE =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle INT_LE =
+      MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+  private static final VarHandle LONG_BE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+  private static final VarHandle LONG_LE =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  /*package*/ static int getInt(byte[] memory, int index) {
+    return (int) INT_BE.get(memory, index);
+  }
+
+  /*package*/ static int getIntLE(byte[] memory, int index) {
+    return (int) INT_LE.get(memory, index);
+  }
+
+  /*package*/ static long getLong(byte[] memory, int index) {
+    return (long) LONG_BE.get(memory, index);
+  }
+
+  /*package*/ static long getLongLE(byte[] memory, int index) {
+    return (long) LONG_LE.get(memory, index);
+  }
+
+  /*package*/ static void setInt(byte[] memory, int index, int value) {
+    INT_BE.set(memory, index, value);
+  }
+
+  /*package*/ static void setIntLE(byte[] memory, int index, int value) {
+    INT_LE.set(memory, index, value);
+  }
+
+  /*package*/ static void setLong(byte[] memory, int index, long value) {
+    LONG_BE.set(memory, index, value);
+  }
+
+  /*package*/ static void setLongLE(byte[] memory, int index, long value) {
+    LONG_LE.set(memory, index, value);
+  }
+
+  // Utility class
+  private ByteArrayAccess() {
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.client;
+
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public final class DelegationCacheTest {
+
+  private static final byte[] LONG_TERM_KEY = new byte[32];
+  private static final byte[] DELEGATED_KEY = {1, 2, 3};
+
+  private static byte[] cert(int n) {
+    return new byte[]{(byte) n, 0x43, 0x45, 0x52, 0x54};
+  }
+
+  @Test
+  public void storedDelegationIsReturned() {
+    DelegationCache cache = new DelegationCache(4, () -> 100L);
+    cache.put(LONG_TERM_KEY, cert(1), new DelegationCache.Delegation(DELEGATED_KEY, 10, 200));
+
+    DelegationCache.Delegation found = cache.get(LONG_TERM_KEY, cert(1));
+    assertThat(found, notNullValue());
+    assertArrayEquals(found.publicKey(), DELEGATED_KEY);
+    assertThat(found.minT(), equalTo(10L));
+    assertThat(found.maxT(), equalTo(200L));
+
+    assertThat(cache.get(LONG_TERM_KEY, cert(2)), nullValue());
+  }
+
+  @Test
+  public void delegationsExpireAfterMaxT() {
+    AtomicLong now = new AtomicLong(100);
+    DelegationCache cache = new DelegationCache(4, now::get);
+    cache.put(LONG_TERM_KEY, cert(1), new DelegationCache.Delegation(DELEGATED_KEY, 10, 200));
+
+    now.set(200);
+    assertThat(cache.get(LONG_TERM_KEY, cert(1)), notNullValue());
+
+    now.set(201);
+    assertThat(cache.get(LONG_TERM_KEY, cert(1)), nullValue());
+    assertThat(cache.size(), equalTo(0));
+
+    // Already expired delegations are not stored at all
+    cache.put(LONG_TERM_KEY, cert(2), new DelegationCache.Delegation(DELEGATED_KEY, 10, 200));
+    assertThat(cache.size(), equalTo(0));
+  }
+
+  @Test
+  public void leastRecentlyUsedDelegationIsEvicted() {
+    DelegationCache cache = new DelegationCache(2, () -> 0L);
+    cache.put(LONG_TERM_KEY, cert(1), new DelegationCache.Delegation(DELEGATED_KEY, 0, 1));
+    cache.put(LONG_TERM_KEY, cert(2), new DelegationCache.Delegation(DELEGATED_KEY, 0, 1));
+    cache.get(LONG_TERM_KEY, cert(1));
+    cache.put(LONG_TERM_KEY, cert(3), new DelegationCache.Delegation(DELEGATED_KEY, 0, 1));
+
+    assertThat(cache.size(), equalTo(2));
+    assertThat(cache.get(LONG_TERM_KEY, cert(1)), notNullValue());
+    assertThat(cache.get(LONG_TERM_KEY, cert(2)), nullValue());
+    assertThat(cache.get(LONG_TERM_KEY, cert(3)), notNullValue());
+  }
+}
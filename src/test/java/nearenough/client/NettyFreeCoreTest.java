@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.client;
+
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import nearenough.protocol.RtConstants;
+import nearenough.protocol.RtMessage;
+import nearenough.protocol.RtStatus;
+import nearenough.protocol.RtTag;
+import nearenough.protocol.RtValidator;
+import nearenough.protocol.RtWire;
+import nearenough.protocol.exceptions.SignatureInvalid;
+import net.i2p.crypto.eddsa.EdDSAEngine;
+import org.junit.Test;
+
+/**
+ * Runs the client and protocol core in a class loader that cannot see Netty.
+ */
+public final class NettyFreeCoreTest {
+
+  /**
+   * Exercises the client and protocol using only {@code byte[]} and {@link ByteBuffer}. Any use
+   * of a Netty class fails with {@link NoClassDefFoundError}.
+   */
+  public static final class Scenario implements Runnable {
+
+    @Override
+    public void run() {
+      RoughtimeClient client = new RoughtimeClient(new byte[32], new Random(42));
+
+      ByteBuffer request = ByteBuffer.allocateDirect(RtConstants.MIN_REQUEST_LENGTH);
+      client.writeRequest(request);
+      request.flip();
+      check(RtValidator.validate(request) == RtStatus.OK, "request invalid");
+      check(Arrays.equals(RtWire.toBytes(client.createRequest()), toArray(request)), "request");
+
+      RtMessage dele = RtMessage.builder()
+          .add(RtTag.PUBK, new byte[32])
+          .add(RtTag.MINT, new byte[8])
+          .add(RtTag.MAXT, new byte[8])
+          .build();
+      RtMessage cert = RtMessage.builder()
+          .add(RtTag.DELE, dele)
+          .add(RtTag.SIG, new byte[64])
+          .build();
+      byte[] response = RtWire.toBytes(RtMessage.builder().add(RtTag.CERT, cert).build());
+      check(Arrays.equals(gather(RtWire.toNioBuffers(cert)), RtWire.toBytes(cert)), "gathered");
+
+      try (RtMessage view = RtMessage.view(ByteBuffer.wrap(response))) {
+        check(view.toString().contains("PUBK"), "toString");
+        client.processResponse(view);
+      }
+      check(client.invalidResponseCause() instanceof SignatureInvalid, "signature not checked");
+    }
+
+    private static byte[] gather(ByteBuffer[] bufs) {
+      int length = 0;
+      for (ByteBuffer buf : bufs) {
+        length += buf.remaining();
+      }
+
+      ByteBuffer out = ByteBuffer.allocate(length);
+      for (ByteBuffer buf : bufs) {
+        out.put(buf.duplicate());
+      }
+      return out.array();
+    }
+
+    private static byte[] toArray(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.remaining()];
+      buf.duplicate().get(bytes);
+      return bytes;
+    }
+
+    private static void check(boolean condition, String message) {
+      if (!condition) {
+        throw new AssertionError(message);
+      }
+    }
+  }
+
+  @Test
+  public void coreRunsWithoutNettyOnClasspath() throws Exception {
+    URL[] urls = {
+        RtMessage.class.getProtectionDomain().getCodeSource().getLocation(),
+        Scenario.class.getProtectionDomain().getCodeSource().getLocation(),
+        EdDSAEngine.class.getProtectionDomain().getCodeSource().getLocation()
+    };
+
+    // Parent is the bootstrap loader, so nothing else on the test classpath is visible
+    try (URLClassLoader loader = new URLClassLoader(urls, null)) {
+      Class<?> scenario = Class.forName(Scenario.class.getName(), true, loader);
+      ((Runnable) scenario.getDeclaredConstructor().newInstance()).run();
+
+    } catch (NoClassDefFoundError e) {
+      fail("core depends on a class outside the JDK and EdDSA: " + e.getMessage());
+    }
+  }
+}
@@ -18,12 +18,16 @@ package nearenough.client;
 import static nearenough.util.BytesUtil.hexToBytes;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import nearenough.protocol.exceptions.MerkleTreeInvalid;
 import nearenough.protocol.exceptions.MidpointInvalid;
@@ -31,7 +35,9 @@ import nearenough.protocol.exceptions.SignatureInvalid;
 import nearenough.protocol.RtConstants;
 import nearenough.protocol.RtHashing;
 import nearenough.protocol.RtMessage;
+import nearenough.protocol.RtStatus;
 import nearenough.protocol.RtTag;
+import nearenough.protocol.RtWire;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -108,6 +114,7 @@ public final class RoughtimeClientTest {
     client.processResponse(RtMessage.fromBytes(RESPONSE));
 
     assertTrue(client.isResponseValid());
+    assertThat(client.responseStatus(), equalTo(RtStatus.OK));
     assertThat(client.midpoint(), equalTo(1486325219017470L));
     assertThat(client.radius(), equalTo(1_000_000));
   }
@@ -157,6 +164,116 @@ public final class RoughtimeClientTest {
     );
   }
 
+  @Test
+  public void failureStatusIsAvailableWithoutException() {
+    RoughtimeClient client = new RoughtimeClient(GOOGLE_PUBKEY, NONCE);
+    assertThat(client.responseStatus(), nullValue());
+
+    byte[] responseCopy = Arrays.copyOf(RESPONSE, RESPONSE.length);
+    responseCopy[0x28] += 1;
+    client.processResponse(RtMessage.fromBytes(responseCopy));
+    assertThat(client.responseStatus(), equalTo(RtStatus.SIGNATURE_INVALID));
+
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+    assertThat(client.responseStatus(), equalTo(RtStatus.OK));
+  }
+
+  @Test
+  public void verifiedDelegationIsCachedForLaterResponses() {
+    DelegationCache cache = new DelegationCache(4, () -> 0L);
+    RoughtimeClient first = new RoughtimeClient(GOOGLE_PUBKEY, NONCE).delegationCache(cache);
+    first.processResponse(RtMessage.fromBytes(RESPONSE));
+
+    assertTrue(first.isResponseValid());
+    assertThat(cache.size(), equalTo(1));
+
+    RoughtimeClient second = new RoughtimeClient(GOOGLE_PUBKEY, NONCE).delegationCache(cache);
+    second.processResponse(RtMessage.fromBytes(RESPONSE));
+
+    assertTrue(second.isResponseValid());
+    assertThat(second.midpoint(), equalTo(1486325219017470L));
+    assertThat(cache.size(), equalTo(1));
+  }
+
+  @Test
+  public void defaultDelegationCacheIsNotShared() {
+    DelegationCache.shared().clear();
+    RoughtimeClient client = new RoughtimeClient(GOOGLE_PUBKEY, NONCE);
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+
+    assertTrue(client.isResponseValid());
+    assertThat(DelegationCache.shared().size(), equalTo(0));
+  }
+
+  @Test
+  public void cachedDelegationIsUsedInsteadOfCertSignature() {
+    byte[] cert = RtMessage.fromBytes(RESPONSE).get(RtTag.CERT);
+    DelegationCache cache = new DelegationCache(4, () -> 0L);
+    cache.put(
+        GOOGLE_PUBKEY, cert, new DelegationCache.Delegation(new byte[32], 0, Long.MAX_VALUE)
+    );
+
+    // The bogus cached delegated key is trusted, so the SREP signature no longer verifies
+    RoughtimeClient client = new RoughtimeClient(GOOGLE_PUBKEY, NONCE).delegationCache(cache);
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+
+    assertFalse(client.isResponseValid());
+    assertThat(
+        client.invalidResponseCause().getMessage(),
+        containsString("signature on SREP does not match")
+    );
+
+    // Without the cache the CERT signature is verified and the response is valid
+    client = new RoughtimeClient(GOOGLE_PUBKEY, NONCE).delegationCache(null);
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+    assertTrue(client.isResponseValid());
+  }
+
+  @Test
+  public void cachedDelegationIsNotTrustedForOtherLongTermKeys() {
+    DelegationCache cache = new DelegationCache(4, () -> 0L);
+    new RoughtimeClient(GOOGLE_PUBKEY, NONCE)
+        .delegationCache(cache)
+        .processResponse(RtMessage.fromBytes(RESPONSE));
+
+    // Encoding of the identity point, a valid key that signed nothing
+    byte[] otherKey = new byte[RtConstants.PUBKEY_LENGTH];
+    otherKey[0] = 1;
+    RoughtimeClient client = new RoughtimeClient(otherKey, NONCE).delegationCache(cache);
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+
+    assertFalse(client.isResponseValid());
+    assertThat(client.invalidResponseCause(), instanceOf(SignatureInvalid.class));
+  }
+
+  @Test
+  public void verifiersAreReusedAcrossResponsesAndDelegatedKeys() {
+    byte[] cert = RtMessage.fromBytes(RESPONSE).get(RtTag.CERT);
+    DelegationCache cache = new DelegationCache(4, () -> 0L);
+    cache.put(
+        GOOGLE_PUBKEY, cert, new DelegationCache.Delegation(new byte[32], 0, Long.MAX_VALUE)
+    );
+
+    RoughtimeClient client = new RoughtimeClient(GOOGLE_PUBKEY, NONCE).delegationCache(cache);
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+    assertFalse(client.isResponseValid());
+
+    // The response's own delegated key replaces the bogus one
+    client.delegationCache(null);
+    for (int i = 0; i < 3; i++) {
+      client.processResponse(RtMessage.fromBytes(RESPONSE));
+      assertTrue(client.isResponseValid());
+    }
+
+    byte[] responseCopy = Arrays.copyOf(RESPONSE, RESPONSE.length);
+    responseCopy[0xdc] += 1;
+    client.processResponse(RtMessage.fromBytes(responseCopy));
+    assertFalse(client.isResponseValid());
+
+    client.processResponse(RtMessage.fromBytes(RESPONSE));
+    assertTrue(client.isResponseValid());
+  }
+
   @Test
   public void invalidDeleSignature() {
     byte[] responseCopy = Arrays.copyOf(RESPONSE, RESPONSE.length);
@@ -254,4 +371,21 @@ public final class RoughtimeClientTest {
     RtMessage request = client.createRequest();
     assertArrayEquals(request.get(RtTag.NONC), NONCE);
   }
+
+  @Test
+  public void writtenRequestMatchesEncodedCreateRequest() {
+    RoughtimeClient client = new RoughtimeClient(new byte[RtConstants.PUBKEY_LENGTH], NONCE);
+
+    ByteBuf expected = RtWire.toWire(client.createRequest());
+    ByteBuf written = Unpooled.buffer();
+    ByteBuffer writtenNio = ByteBuffer.allocate(RtConstants.MIN_REQUEST_LENGTH);
+
+    assertThat(client.writeRequest(written), equalTo(expected.readableBytes()));
+    assertThat(client.writeRequest(writtenNio), equalTo(expected.readableBytes()));
+    writtenNio.flip();
+
+    assertThat(written, equalTo(expected));
+    assertThat(Unpooled.wrappedBuffer(writtenNio), equalTo(expected));
+    expected.release();
+  }
 }
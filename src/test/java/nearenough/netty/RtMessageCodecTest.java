@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.netty;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.DecoderException;
+import java.net.InetSocketAddress;
+import nearenough.protocol.RtMessage;
+import nearenough.protocol.RtTag;
+import nearenough.protocol.RtWire;
+import nearenough.protocol.exceptions.InvalidRoughTimeMessage;
+import org.junit.Test;
+
+public final class RtMessageCodecTest {
+
+  private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 12345);
+  private static final InetSocketAddress SERVER = new InetSocketAddress("127.0.0.1", 2002);
+
+  private static RtMessage message() {
+    return RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.NONC, new byte[64])
+        .build();
+  }
+
+  @Test
+  public void decodesPacketIntoViewAndReleasesOnEnvelopeRelease() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RtMessageDecoder());
+
+    ByteBuf content = RtWire.toWire(message(), PooledByteBufAllocator.DEFAULT);
+    assertTrue(channel.writeInbound(new DatagramPacket(content, CLIENT, SERVER)));
+
+    RtEnvelope envelope = channel.readInbound();
+    assertThat(envelope.sender(), equalTo(SERVER));
+    assertThat(envelope.recipient(), equalTo(CLIENT));
+    assertTrue(envelope.content().isView());
+    assertArrayEquals(envelope.content().get(RtTag.INDX), new byte[]{1, 2, 3, 4});
+
+    // Only the view keeps the packet's buffer alive
+    assertThat(content.refCnt(), equalTo(1));
+    assertTrue(envelope.release());
+    assertThat(content.refCnt(), equalTo(0));
+
+    assertThat(channel.finish(), equalTo(false));
+  }
+
+  @Test
+  public void malformedPacketIsReleased() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RtMessageDecoder());
+
+    ByteBuf content = PooledByteBufAllocator.DEFAULT.buffer().writeIntLE(0x0fffffff);
+    try {
+      channel.writeInbound(new DatagramPacket(content, CLIENT, SERVER));
+      fail("expected a DecoderException");
+    } catch (DecoderException e) {
+      assertThat(e.getCause(), instanceOf(InvalidRoughTimeMessage.class));
+    }
+
+    assertThat(content.refCnt(), equalTo(0));
+    assertThat(channel.finish(), equalTo(false));
+  }
+
+  @Test
+  public void encodesEnvelopeIntoDatagramPacket() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RtMessageEncoder());
+    RtMessage msg = message();
+    ByteBuf expected = RtWire.toWire(msg);
+
+    assertTrue(channel.writeOutbound(new RtEnvelope(msg, SERVER)));
+
+    DatagramPacket packet = channel.readOutbound();
+    assertThat(packet.recipient(), equalTo(SERVER));
+    assertThat(packet.content(), equalTo(expected));
+
+    packet.release();
+    expected.release();
+    assertThat(channel.finish(), equalTo(false));
+  }
+
+  @Test
+  public void encodesBareMessageIntoByteBuf() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RtMessageEncoder());
+    RtMessage msg = message();
+    ByteBuf expected = RtWire.toWire(msg);
+
+    assertTrue(channel.writeOutbound(msg));
+
+    ByteBuf encoded = channel.readOutbound();
+    assertThat(encoded, equalTo(expected));
+
+    encoded.release();
+    expected.release();
+    assertThat(channel.finish(), equalTo(false));
+  }
+
+  @Test
+  public void decodedMessagesRoundTripThroughEncoder() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RtMessageDecoder(), new RtMessageEncoder());
+    ByteBuf expected = RtWire.toWire(message());
+
+    channel.writeInbound(new DatagramPacket(expected.retainedDuplicate(), CLIENT, SERVER));
+    RtEnvelope request = channel.readInbound();
+
+    // Reply to the sender with the same message; the encoder releases the envelope
+    channel.writeOutbound(new RtEnvelope(request.content(), request.sender()));
+    DatagramPacket reply = channel.readOutbound();
+
+    assertThat(reply.recipient(), equalTo(SERVER));
+    assertThat(reply.content(), equalTo(expected));
+    assertThat(expected.refCnt(), equalTo(1));
+
+    reply.release();
+    expected.release();
+    assertThat(channel.finish(), equalTo(false));
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.util.BytesUtil.hexToBytes;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public final class Ed25519EngineTest {
+
+  // RFC 8032 section 7.1, TEST 1 to TEST 3: public key, message, signature
+  private static final String[][] RFC8032_VECTORS = {
+      {
+          "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a",
+          "",
+          "e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e065224901555fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b"
+      },
+      {
+          "3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+          "72",
+          "92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00"
+      },
+      {
+          "fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+          "af82",
+          "6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a"
+      }
+  };
+
+  private static final BigInteger ORDER = BigInteger.ONE.shiftLeft(252)
+      .add(new BigInteger("27742317777372353535851937790883648493"));
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private static boolean verify(byte[] pubKey, byte[] message, byte[] signature)
+      throws Exception {
+    Signature engine = new Ed25519Engine(Ed25519Engine.decodePublicKey(pubKey));
+    engine.update(message);
+    return engine.verify(signature);
+  }
+
+  @Test
+  public void rfc8032TestVectorsVerify() throws Exception {
+    for (String[] vector : RFC8032_VECTORS) {
+      byte[] pubKey = hexToBytes(vector[0]);
+      byte[] message = hexToBytes(vector[1]);
+      byte[] signature = hexToBytes(vector[2]);
+
+      assertTrue(vector[0], verify(pubKey, message, signature));
+
+      signature[5] ^= 0x10;
+      assertFalse(vector[0], verify(pubKey, message, signature));
+    }
+  }
+
+  @Test
+  public void agreesWithI2pEngine() throws Exception {
+    RtSignatureProvider i2p = new I2pSignatureProvider();
+    Random random = new Random(8032);
+
+    for (int i = 0; i < 300; i++) {
+      byte[] seed = new byte[32];
+      random.nextBytes(seed);
+      byte[] message = new byte[random.nextInt(200)];
+      random.nextBytes(message);
+
+      RtEd25519.Signer signer = new RtEd25519.Signer(seed, i2p);
+      signer.update(message);
+      byte[] signature = signer.sign();
+      if (i % 2 == 1) {
+        signature[random.nextInt(64)] ^= (byte) (1 << random.nextInt(8));
+      }
+
+      Signature expected = i2p.newVerifier(signer.getPubKey());
+      expected.update(message);
+      assertThat(
+          "signature " + i,
+          verify(signer.getPubKey(), message, signature),
+          equalTo(expected.verify(signature))
+      );
+    }
+  }
+
+  @Test
+  public void engineIsReusableAcrossMessages() throws Exception {
+    RtEd25519.Signer signer = new RtEd25519.Signer(new byte[32]);
+    Signature engine = new Ed25519Engine(Ed25519Engine.decodePublicKey(signer.getPubKey()));
+
+    for (int length : new int[]{0, 1, 255, 256, 257, 4096, 3}) {
+      byte[] message = new byte[length];
+      Arrays.fill(message, (byte) length);
+      signer.update(message);
+      byte[] signature = signer.sign();
+
+      engine.update(message, 0, length / 2);
+      engine.update(message, length / 2, length - length / 2);
+      assertTrue("length " + length, engine.verify(signature));
+    }
+  }
+
+  @Test
+  public void nonCanonicalScalarIsRejected() throws Exception {
+    String[] vector = RFC8032_VECTORS[1];
+    byte[] pubKey = hexToBytes(vector[0]);
+    byte[] message = hexToBytes(vector[1]);
+    byte[] signature = hexToBytes(vector[2]);
+
+    // S + L is an equally valid solution of the verification equation, but not below L
+    byte[] s = Arrays.copyOfRange(signature, 32, 64);
+    byte[] sPlusOrder = toLittleEndian(fromLittleEndian(s).add(ORDER));
+    System.arraycopy(sPlusOrder, 0, signature, 32, 32);
+
+    assertFalse(verify(pubKey, message, signature));
+  }
+
+  @Test
+  public void nonCanonicalPublicKeyIsRejected() throws Exception {
+    thrown.expect(InvalidKeyException.class);
+
+    // y = p + 1, which reduces to the valid y = 1
+    byte[] pubKey = new byte[32];
+    Arrays.fill(pubKey, (byte) 0xff);
+    pubKey[0] = (byte) 0xee;
+    pubKey[31] = 0x7f;
+    Ed25519Engine.decodePublicKey(pubKey);
+  }
+
+  @Test
+  public void pointNotOnCurveIsRejected() throws Exception {
+    thrown.expect(InvalidKeyException.class);
+    thrown.expectMessage("invalid Ed25519 public key");
+
+    // y = 2 has no corresponding x
+    byte[] pubKey = new byte[32];
+    pubKey[0] = 2;
+    Ed25519Engine.decodePublicKey(pubKey);
+  }
+
+  @Test
+  public void fieldRoundTripsAndSquareRootOfMinusOne() {
+    byte[] encoded = new byte[32];
+    new Random(25519).nextBytes(encoded);
+    encoded[31] &= 0x7f;
+
+    long[] f = Ed25519Field.create();
+    Ed25519Field.fromBytes(f, encoded, 0);
+    byte[] roundTrip = new byte[32];
+    Ed25519Field.toBytes(roundTrip, 0, f);
+    assertThat(roundTrip, equalTo(encoded));
+
+    // (2^((p-1)/4))^2 + 1 == 0
+    long[] two = Ed25519Field.create();
+    long[] root = Ed25519Field.create();
+    long[][] t = {
+        Ed25519Field.create(), Ed25519Field.create(), Ed25519Field.create(), Ed25519Field.create()
+    };
+    two[0] = 2;
+    Ed25519Field.pow22523(root, two, t[0], t[1], t[2], t[3]);
+    Ed25519Field.sqr(root, root);
+    Ed25519Field.mul(root, root, two);
+    Ed25519Field.sqr(root, root);
+    Ed25519Field.one(t[0]);
+    Ed25519Field.add(root, root, t[0]);
+    assertTrue(Ed25519Field.isZero(root, new byte[32]));
+  }
+
+  @Test
+  public void scalarReductionMatchesBigInteger() {
+    Random random = new Random(252);
+    byte[] reduced = new byte[32];
+    long[] scratch = new long[Ed25519Scalar.REDUCE_SCRATCH_LIMBS];
+
+    for (int i = 0; i < 100; i++) {
+      byte[] wide = new byte[64];
+      random.nextBytes(wide);
+      if (i == 0) {
+        Arrays.fill(wide, (byte) 0xff);
+      }
+
+      Ed25519Scalar.reduce(reduced, wide, scratch);
+      assertThat(fromLittleEndian(reduced), equalTo(fromLittleEndian(wide).mod(ORDER)));
+    }
+  }
+
+  private static BigInteger fromLittleEndian(byte[] bytes) {
+    byte[] bigEndian = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bigEndian[i] = bytes[bytes.length - 1 - i];
+    }
+    return new BigInteger(1, bigEndian);
+  }
+
+  private static byte[] toLittleEndian(BigInteger value) {
+    byte[] bigEndian = value.toByteArray();
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length && i < bigEndian.length; i++) {
+      bytes[i] = bigEndian[bigEndian.length - 1 - i];
+    }
+    return bytes;
+  }
+}
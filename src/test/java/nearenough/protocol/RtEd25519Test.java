@@ -17,9 +17,18 @@ package nearenough.protocol;
 
 import static nearenough.util.BytesUtil.hexToBytes;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.security.InvalidKeyException;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -93,6 +102,228 @@ public final class RtEd25519Test {
     assertTrue("signature validates", verifier.verify(signature));
   }
 
+  @Test
+  public void decodedPublicKeysAreCachedAndBounded() throws Exception {
+    byte[] pubKey = new RtEd25519.Signer(new byte[32]).getPubKey();
+    Object decoded = RtEd25519.decodePublicKey(pubKey);
+
+    // Cached by value, and immune to later changes to the caller's array
+    assertThat(RtEd25519.decodePublicKey(pubKey.clone()), sameInstance(decoded));
+    byte[] mutated = pubKey.clone();
+    RtEd25519.decodePublicKey(mutated);
+    mutated[0] ^= 0x01;
+    assertThat(RtEd25519.decodePublicKey(pubKey), sameInstance(decoded));
+
+    // Decoding enough other keys evicts the least recently used
+    for (int i = 1; i <= RtEd25519.KEY_CACHE_SIZE; i++) {
+      byte[] seed = new byte[32];
+      seed[0] = (byte) i;
+      RtEd25519.decodePublicKey(new RtEd25519.Signer(seed).getPubKey());
+    }
+    assertThat(RtEd25519.decodePublicKey(pubKey), not(sameInstance(decoded)));
+  }
+
+  @Test
+  public void providersShareDecodedKeyCache() throws Exception {
+    byte[] seed = new byte[32];
+    seed[0] = (byte) 0xc4;
+    byte[] pubKey = new RtEd25519.Signer(seed).getPubKey();
+
+    new RtEd25519.Verifier(pubKey, new I2pSignatureProvider());
+    new RtEd25519.Verifier(pubKey, new NearenoughSignatureProvider());
+
+    RtEd25519.DecodedKeys cached = RtEd25519.cachedKeys(pubKey);
+    assertThat(cached.i2p, sameInstance(RtEd25519.decodePublicKey(pubKey)));
+    assertThat(cached.nearenough, sameInstance(Ed25519Engine.decodePublicKey(pubKey)));
+  }
+
+  @Test
+  public void batchVerifiesManySignatures() throws Exception {
+    RtEd25519.BatchVerifier batch = new RtEd25519.BatchVerifier();
+    for (int i = 0; i < 40; i++) {
+      byte[] seed = new byte[32];
+      seed[0] = (byte) (i % 3); // several signatures per key
+      RtEd25519.Signer signer = new RtEd25519.Signer(seed);
+      byte[] message = {(byte) i, 0x01, 0x02};
+      signer.update(message);
+
+      assertThat(batch.add(signer.getPubKey(), signer.sign(), message), equalTo(i));
+    }
+
+    boolean[] expected = new boolean[40];
+    Arrays.fill(expected, true);
+    assertTrue(Arrays.equals(batch.verify(), expected));
+    assertThat(batch.size(), equalTo(0));
+  }
+
+  @Test
+  public void batchIdentifiesInvalidSignatures() throws Exception {
+    RtEd25519.Signer signer = new RtEd25519.Signer(new byte[32]);
+    byte[] context = "context".getBytes();
+    RtEd25519.BatchVerifier batch = new RtEd25519.BatchVerifier();
+
+    for (int i = 0; i < 10; i++) {
+      byte[] message = {(byte) i};
+      signer.update(context);
+      signer.update(message);
+      byte[] signature = signer.sign();
+
+      if (i == 3) {
+        signature[40] ^= 0x01; // S
+      } else if (i == 7) {
+        signature[0] ^= 0x01; // R
+      }
+      batch.add(signer.getPubKey(), signature, context, message);
+    }
+
+    boolean[] results = batch.verify();
+    for (int i = 0; i < results.length; i++) {
+      assertThat("signature " + i, results[i], equalTo(i != 3 && i != 7));
+    }
+  }
+
+  @Test
+  public void batchRejectsNonCanonicalScalarLikeVerifier() throws Exception {
+    // Group order L, little-endian
+    byte[] order = hexToBytes("edd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010");
+    RtEd25519.Signer signer = new RtEd25519.Signer(new byte[32]);
+    RtEd25519.BatchVerifier batch = new RtEd25519.BatchVerifier();
+    byte[] malleated = null;
+
+    for (int i = 0; i < 10; i++) {
+      byte[] message = {(byte) i};
+      signer.update(message);
+      byte[] signature = signer.sign();
+
+      if (i == 5) {
+        // S + L satisfies the verification equation just as S does
+        for (int j = 0, carry = 0; j < 32; j++) {
+          int sum = (signature[32 + j] & 0xff) + (order[j] & 0xff) + carry;
+          signature[32 + j] = (byte) sum;
+          carry = sum >>> 8;
+        }
+        malleated = signature;
+      }
+      batch.add(signer.getPubKey(), signature, message);
+    }
+
+    boolean[] results = batch.verify();
+    for (int i = 0; i < results.length; i++) {
+      assertThat("signature " + i, results[i], equalTo(i != 5));
+    }
+
+    RtEd25519.Verifier verifier = new RtEd25519.Verifier(signer.getPubKey());
+    verifier.update(new byte[]{5});
+    assertFalse(verifier.verify(malleated));
+  }
+
+  @Test
+  public void batchRejectsNonCanonicalPublicKeyLikeVerifier() throws Exception {
+    // y = p + 1 encodes the identity, for which R = identity and S = 0 satisfy the verification
+    // equation for any message once y is reduced modulo p
+    byte[] identityKey = hexToBytes(
+        "eeffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff7f"
+    );
+    byte[] forged = new byte[64];
+    forged[0] = 0x01;
+
+    RtEd25519.Signer signer = new RtEd25519.Signer(new byte[32]);
+    RtEd25519.BatchVerifier batch = new RtEd25519.BatchVerifier();
+    for (int i = 0; i < 10; i++) {
+      byte[] message = {(byte) i};
+      if (i == 4) {
+        batch.add(identityKey, forged, message);
+      } else {
+        signer.update(message);
+        batch.add(signer.getPubKey(), signer.sign(), message);
+      }
+    }
+
+    boolean[] results = batch.verify();
+    for (int i = 0; i < results.length; i++) {
+      assertThat("signature " + i, results[i], equalTo(i != 4));
+    }
+
+    batch.add(identityKey, forged, new byte[]{4});
+    assertFalse(batch.verify()[0]);
+
+    try {
+      new RtEd25519.Verifier(identityKey);
+      fail("non-canonical public key was accepted");
+    } catch (InvalidKeyException expected) {
+    }
+  }
+
+  @Test
+  public void batchMatchesIndividualVerification() throws Exception {
+    byte[] pubKey = hexToBytes("c0dac102c4533186e25dc43128472353eaabdb878b152aeb8e001f92d90233a7");
+    byte[] message = hexToBytes("5f4c8989");
+    byte[] signature = hexToBytes(
+        "124f6fc6b0d100842769e71bd530664d888df8507df6c56dedfdb509aeb93416e26b918d38aa06305df3095697c18b2aa832eaa52edc0ae49fbae5a85e150c07"
+    );
+
+    RtEd25519.BatchVerifier batch = new RtEd25519.BatchVerifier();
+    assertThat(batch.verify().length, equalTo(0));
+
+    batch.add(pubKey, signature, message);
+    assertTrue(batch.verify()[0]);
+
+    batch.add(pubKey, signature, new byte[0]);
+    assertFalse(batch.verify()[0]);
+  }
+
+  @Test
+  public void availableProvidersInteroperate() throws Exception {
+    byte[] seed = hexToBytes("0d4a05b07352a5436e180356da0ae6efa0345ff7fb1572575772e8005ed978e9");
+    byte[] message = hexToBytes("cbc77b");
+    byte[] signature = hexToBytes(
+        "d9868d52c2bebce5f3fa5a79891970f309cb6591e3e1702a70276fa97c24b3a8e58606c38c9758529da50ee31b8219cba45271c689afa60b0ea26c99db19b00c"
+    );
+    byte[] pubKey = new RtEd25519.Signer(seed, new I2pSignatureProvider()).getPubKey();
+
+    for (RtSignatureProvider provider : RtEd25519.providers()) {
+      if (!provider.isAvailable()) {
+        continue;
+      }
+
+      RtEd25519.Signer signer = new RtEd25519.Signer(seed, provider);
+      signer.update(message);
+      assertArrayEquals(provider.name(), signature, signer.sign());
+      assertArrayEquals(provider.name(), pubKey, signer.getPubKey());
+
+      RtEd25519.Verifier verifier = new RtEd25519.Verifier(pubKey, provider);
+      verifier.update(message);
+      assertTrue(provider.name(), verifier.verify(signature));
+    }
+  }
+
+  @Test
+  public void providerIsSelectedByNameOrAvailability() {
+    RtSignatureProvider absent = new UnavailableProvider();
+    RtSignatureProvider i2p = new I2pSignatureProvider();
+    List<RtSignatureProvider> candidates = Arrays.asList(absent, i2p);
+
+    assertThat(RtEd25519.selectProvider(null, candidates), sameInstance(i2p));
+    assertThat(RtEd25519.selectProvider("i2p", candidates), sameInstance(i2p));
+    assertThat(RtEd25519.provider().name(), equalTo("nearenough"));
+  }
+
+  @Test
+  public void unavailableProviderCannotBeSelected() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Ed25519 provider 'absent' is not available");
+
+    RtEd25519.selectProvider("absent", Arrays.asList(new UnavailableProvider()));
+  }
+
+  @Test
+  public void unknownProviderCannotBeSelected() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("unknown Ed25519 provider 'bogus'");
+
+    RtEd25519.selectProvider("bogus", RtEd25519.providers());
+  }
+
   @Test
   public void invalidSeedLengthThrows() throws Exception {
     thrown.expect(IllegalArgumentException.class);
@@ -101,6 +332,22 @@ public final class RtEd25519Test {
     new RtEd25519.Signer(new byte[1]);
   }
 
+  @Test
+  public void oversizedSeedIsRejectedForEveryProvider() throws Exception {
+    for (RtSignatureProvider provider : RtEd25519.providers()) {
+      if (!provider.isAvailable()) {
+        continue;
+      }
+
+      try {
+        new RtEd25519.Signer(new byte[33], provider);
+        fail(provider.name() + ": expected an IllegalArgumentException");
+      } catch (IllegalArgumentException e) {
+        assertThat(provider.name(), e.getMessage(), equalTo("seed length is wrong"));
+      }
+    }
+  }
+
   @Test
   public void invalidPublicKeyLengthThrows() throws Exception {
     thrown.expect(IllegalArgumentException.class);
@@ -109,4 +356,31 @@ public final class RtEd25519Test {
     new RtEd25519.Verifier(new byte[1]);
   }
 
+  private static final class UnavailableProvider implements RtSignatureProvider {
+
+    @Override
+    public String name() {
+      return "absent";
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return false;
+    }
+
+    @Override
+    public Signature newSigner(byte[] seed) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] publicKey(byte[] seed) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Signature newVerifier(byte[] publicKey) {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
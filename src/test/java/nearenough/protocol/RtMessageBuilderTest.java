@@ -22,6 +22,8 @@ import static org.junit.Assert.assertTrue;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import org.junit.Test;
@@ -116,6 +118,22 @@ public final class RtMessageBuilderTest {
     assertThat(msg.get(RtTag.PAD).length, equalTo(0));
   }
 
+  @Test
+  public void addingTagTwiceReplacesValue() {
+    byte[] value = {6, 7, 8, 9};
+
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.NONC, new byte[4])
+        .add(RtTag.NONC, value)
+        .add(RtTag.INDX, new byte[4])
+        .build();
+
+    assertThat(msg.numTags(), equalTo(2));
+    assertArrayEquals(msg.get(RtTag.NONC), value);
+    assertThat(msg.mapping().size(), equalTo(2));
+    assertTrue(msg.mapping().containsKey(RtTag.INDX));
+  }
+
   @Test
   public void addValueOverloads() {
     byte[] value1 = new byte[64];
@@ -140,4 +158,42 @@ public final class RtMessageBuilderTest {
     assertArrayEquals(msg.get(RtTag.MAXT), value2);
     assertArrayEquals(msg.get(RtTag.NONC), value3);
   }
+
+  @Test
+  public void paddingIsWrittenAsZerosByEncoders() {
+    byte[] nonce = new byte[64];
+    Arrays.fill(nonce, (byte) 0xaa);
+
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.NONC, nonce)
+        .addPadding(true)
+        .build();
+
+    ByteBuf onWire = RtWire.toWire(msg);
+    ByteBuffer nioWire = ByteBuffer.allocateDirect(RtWire.encodedSize(msg));
+    RtWire.writeTo(msg, nioWire);
+    nioWire.flip();
+
+    assertThat(onWire.readableBytes(), equalTo(1024));
+    assertThat(Unpooled.wrappedBuffer(nioWire), equalTo(onWire));
+
+    RtMessage parsed = new RtMessage(onWire);
+    assertArrayEquals(parsed.get(RtTag.NONC), nonce);
+    assertArrayEquals(parsed.get(RtTag.PAD), new byte[msg.get(RtTag.PAD).length]);
+    assertArrayEquals(msg.mapping().get(RtTag.PAD), parsed.get(RtTag.PAD));
+    onWire.release();
+  }
+
+  @Test
+  public void paddingReplacesExplicitPadValue() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.NONC, new byte[64])
+        .add(RtTag.PAD, new byte[]{1, 2, 3, 4})
+        .addPadding(true)
+        .build();
+
+    assertThat(msg.numTags(), equalTo(2));
+    assertThat(RtWire.encodedSize(msg), equalTo(1024));
+    assertArrayEquals(msg.get(RtTag.PAD), new byte[msg.get(RtTag.PAD).length]);
+  }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import nearenough.protocol.exceptions.InvalidTagException;
+import nearenough.protocol.exceptions.TagsNotIncreasingException;
+import org.junit.Test;
+
+public final class RtMessageReaderTest {
+
+  private static final byte[] THREE_TAGS = {
+      (byte) 0x03, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // 3 tags
+      (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #2 has offset 4
+      (byte) 0x08, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #3 has offset 8
+      (byte) 'D', (byte) 'E', (byte) 'L', (byte) 'E',   // DELE
+      (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX
+      (byte) 'P', (byte) 'A', (byte) 'D', (byte) 0xff,  // PAD
+      (byte) 0x11, (byte) 0x11, (byte) 0x11, (byte) 0x11,  // data for DELE
+      (byte) 0x22, (byte) 0x22, (byte) 0x22, (byte) 0x22,  // data for INDX
+      (byte) 0x33, (byte) 0x33, (byte) 0x33, (byte) 0x33   // data for PAD
+  };
+
+  private static final byte[] SINGLE_TAG = {
+      (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00, // 1 tag
+      (byte) 'C', (byte) 'E', (byte) 'R', (byte) 'T',  // CERT tag
+      (byte) 0x50, (byte) 0x50, (byte) 0x50, (byte) 0x50,  // value 0x50505050
+      (byte) 0x60, (byte) 0x60, (byte) 0x60, (byte) 0x60  // value 0x60606060
+  };
+
+  private static final byte[] UNKNOWN_TAGS = {
+      (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // 4 tags
+      (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #2 has offset 4
+      (byte) 0x08, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #3 has offset 8
+      (byte) 0x0c, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #4 has offset 12
+      (byte) 'V', (byte) 'E', (byte) 'R', (byte) 0x00,  // VER, unknown
+      (byte) 'M', (byte) 'A', (byte) 'X', (byte) 'T',   // MAXT
+      (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX
+      (byte) 'Z', (byte) 'Z', (byte) 'Z', (byte) 'Z',   // ZZZZ, unknown
+      (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x01,  // data for VER
+      (byte) 0x11, (byte) 0x11, (byte) 0x11, (byte) 0x11,  // data for MAXT
+      (byte) 0x22, (byte) 0x22, (byte) 0x22, (byte) 0x22,  // data for INDX
+      (byte) 0x33, (byte) 0x33, (byte) 0x33, (byte) 0x33   // data for ZZZZ
+  };
+
+  @Test
+  public void readerIsReusableAcrossMessages() {
+    RtMessageReader reader = new RtMessageReader();
+
+    ByteBuf threeTags = Unpooled.copiedBuffer(THREE_TAGS);
+    reader.reset(threeTags);
+    assertThat(reader.numTags(), equalTo(3));
+    assertThat(reader.tag(0), equalTo(RtTag.DELE));
+    assertThat(reader.tag(2), equalTo(RtTag.PAD));
+    assertThat(reader.indexOf(RtTag.INDX), equalTo(1));
+    assertThat(reader.valueIndex(1), equalTo(28));
+    assertThat(reader.valueLength(1), equalTo(4));
+    assertArrayEquals(reader.get(RtTag.PAD), new byte[]{0x33, 0x33, 0x33, 0x33});
+
+    ByteBuf singleTag = Unpooled.copiedBuffer(SINGLE_TAG);
+    reader.reset(singleTag);
+    assertThat(reader.numTags(), equalTo(1));
+    assertFalse(reader.contains(RtTag.DELE));
+    assertTrue(reader.contains(RtTag.CERT));
+    assertThat(reader.valueLength(0), equalTo(8));
+    assertThat(reader.buffer(), equalTo(singleTag));
+  }
+
+  @Test
+  public void resetFromByteBufReusesItsInternalNioView() {
+    RtMessageReader reader = new RtMessageReader();
+    ByteBuf heap = Unpooled.copiedBuffer(THREE_TAGS);
+    ByteBuf direct = Unpooled.directBuffer(THREE_TAGS.length).writeBytes(THREE_TAGS);
+
+    for (ByteBuf buf : new ByteBuf[]{heap, direct}) {
+      ByteBuffer first = reader.reset(buf).nioBuffer();
+      assertThat(reader.reset(buf).nioBuffer(), sameInstance(first));
+      assertArrayEquals(reader.get(RtTag.INDX), new byte[]{0x22, 0x22, 0x22, 0x22});
+    }
+
+    // Composites of several components are copied instead
+    ByteBuf composite = Unpooled.wrappedBuffer(
+        Unpooled.copiedBuffer(THREE_TAGS, 0, 20),
+        Unpooled.copiedBuffer(THREE_TAGS, 20, THREE_TAGS.length - 20)
+    );
+    reader.reset(composite);
+    assertArrayEquals(reader.get(RtTag.PAD), new byte[]{0x33, 0x33, 0x33, 0x33});
+    assertThat(reader.valueIndex(2), equalTo(32));
+
+    direct.release();
+  }
+
+  @Test
+  public void resetDoesNotModifyBufferIndices() {
+    ByteBuf buf = Unpooled.buffer(64).writeZero(8).writeBytes(THREE_TAGS);
+    buf.skipBytes(8);
+
+    RtMessageReader reader = new RtMessageReader().reset(buf);
+
+    assertThat(buf.readerIndex(), equalTo(8));
+    assertThat(buf.writerIndex(), equalTo(8 + THREE_TAGS.length));
+    assertThat(reader.valueIndex(0), equalTo(8 + 24));
+    assertArrayEquals(reader.get(RtTag.DELE), new byte[]{0x11, 0x11, 0x11, 0x11});
+  }
+
+  @Test
+  public void regionPastLimitIsParsed() {
+    ByteBuffer buf = ByteBuffer.allocate(64);
+    buf.position(8);
+    buf.put(THREE_TAGS);
+    buf.flip().position(8).limit(16);
+
+    RtMessageReader reader = new RtMessageReader().reset(buf, 8, THREE_TAGS.length);
+
+    assertThat(reader.numTags(), equalTo(3));
+    assertArrayEquals(reader.get(RtTag.PAD), new byte[]{0x33, 0x33, 0x33, 0x33});
+    assertThat(buf.position(), equalTo(8));
+    assertThat(buf.limit(), equalTo(16));
+  }
+
+  @Test
+  public void invalidMessageLeavesReaderEmpty() {
+    RtMessageReader reader = new RtMessageReader().reset(Unpooled.copiedBuffer(THREE_TAGS));
+
+    byte[] notIncreasing = THREE_TAGS.clone();
+    // swap DELE and INDX
+    System.arraycopy(THREE_TAGS, 16, notIncreasing, 12, 4);
+    System.arraycopy(THREE_TAGS, 12, notIncreasing, 16, 4);
+
+    try {
+      reader.reset(Unpooled.copiedBuffer(notIncreasing));
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (TagsNotIncreasingException e) {
+      assertThat(e.getMessage(), containsString("not strictly increasing"));
+      assertThat(reader.numTags(), equalTo(0));
+      assertThat(reader.buffer(), equalTo(null));
+      assertThat(reader.indexOf(RtTag.INDX), equalTo(-1));
+    }
+  }
+
+  @Test
+  public void unknownTagsAreRejectedByDefault() {
+    RtMessageReader reader = new RtMessageReader();
+
+    try {
+      reader.reset(ByteBuffer.wrap(UNKNOWN_TAGS));
+      fail("expected an InvalidTagException");
+
+    } catch (InvalidTagException e) {
+      assertThat(e.getMessage(), containsString("VER"));
+    }
+  }
+
+  @Test
+  public void unknownTagsAreSkippedWhenRequested() {
+    RtMessageReader reader = new RtMessageReader().skipUnknownTags(true);
+    reader.reset(ByteBuffer.wrap(UNKNOWN_TAGS));
+
+    assertThat(reader.numTags(), equalTo(2));
+    assertThat(reader.tag(0), equalTo(RtTag.MAXT));
+    assertThat(reader.tag(1), equalTo(RtTag.INDX));
+    assertThat(reader.indexOf(RtTag.INDX), equalTo(1));
+    assertThat(reader.valueIndex(1), equalTo(40));
+    assertThat(reader.valueLength(1), equalTo(4));
+    assertArrayEquals(reader.get(RtTag.MAXT), new byte[]{0x11, 0x11, 0x11, 0x11});
+
+    RtMessage msg = RtMessage.fromBytes(UNKNOWN_TAGS, true);
+    assertThat(msg.numTags(), equalTo(2));
+    assertTrue(msg.skipsUnknownTags());
+    assertThat(RtValidator.validate(ByteBuffer.wrap(UNKNOWN_TAGS), true), equalTo(RtStatus.OK));
+    assertThat(RtValidator.validate(ByteBuffer.wrap(UNKNOWN_TAGS)), equalTo(RtStatus.INVALID_TAG));
+  }
+
+  @Test
+  public void nestedUnknownTagsAreSkippedWhenPrinting() {
+    byte[] response = RtWire.toBytes(RtMessage.builder().add(RtTag.SREP, UNKNOWN_TAGS).build());
+    RtMessage msg = RtMessage.fromBytes(response, true);
+
+    String printed = msg.toString();
+    assertThat(printed, containsString("MAXT(4) = 11111111"));
+    assertThat(printed, containsString("INDX(4) = 22222222"));
+    assertFalse(printed.contains("ZZZZ"));
+  }
+
+  @Test
+  public void everyTagIsFoundByItsWireEncoding() {
+    for (RtTag tag : RtTag.values()) {
+      assertThat(RtTag.fromUnsignedInt(tag.wireEncoding()), equalTo(tag));
+      assertThat(RtTag.lookup(tag.wireEncoding() ^ 0x01000000), equalTo(null));
+    }
+  }
+}
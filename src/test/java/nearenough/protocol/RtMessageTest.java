@@ -19,22 +19,47 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ResourceLeakDetector;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 import nearenough.protocol.exceptions.InvalidNumTagsException;
 import nearenough.protocol.exceptions.InvalidTagException;
+import nearenough.protocol.exceptions.InvalidValueLengthException;
 import nearenough.protocol.exceptions.MessageTooShortException;
 import nearenough.protocol.exceptions.MessageUnalignedException;
+import nearenough.protocol.exceptions.MissingTagException;
 import nearenough.protocol.exceptions.TagOffsetOverflowException;
 import nearenough.protocol.exceptions.TagOffsetUnalignedException;
 import nearenough.protocol.exceptions.TagsNotIncreasingException;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public final class RtMessageTest {
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void parseEmtpyMessage() {
     // from protocol spec
@@ -125,6 +150,22 @@ public final class RtMessageTest {
     }
   }
 
+  @Test
+  public void exceptionsAreStacklessAndCarryStatus() {
+    ByteBuf unaligned = makeBuf((byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00);
+
+    try {
+      //noinspection unused
+      RtMessage unused = new RtMessage(unaligned);
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (MessageUnalignedException e) {
+      assertThat(e.getStackTrace().length, equalTo(0));
+      assertThat(e.status(), equalTo(RtStatus.MESSAGE_UNALIGNED));
+      assertThat(e.getMessage(), equalTo("message length not multiple of 4: 5"));
+    }
+  }
+
   @Test
   public void messageLessThan4BytesThrowsException() {
     ByteBuf invalidTooShort = makeBuf((byte) 0x01);
@@ -252,6 +293,176 @@ public final class RtMessageTest {
     }
   }
 
+  @Test
+  public void offsetPrecedingPreviousOffsetThrowsException() {
+    ByteBuf invalidOffsetsDecreasing = makeBuf(
+        (byte) 0x03, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // 3 tags
+        (byte) 0x08, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #2 offset 8
+        (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // *invalid* tag #3 offset 4
+        (byte) 'D', (byte) 'E', (byte) 'L', (byte) 'E',   // DELE
+        (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX
+        (byte) 'P', (byte) 'A', (byte) 'D', (byte) 0xff,  // PAD
+        (byte) 0x11, (byte) 0x11, (byte) 0x11, (byte) 0x11,
+        (byte) 0x22, (byte) 0x22, (byte) 0x22, (byte) 0x22,
+        (byte) 0x33, (byte) 0x33, (byte) 0x33, (byte) 0x33
+    );
+
+    try {
+      //noinspection unused
+      RtMessage unused = new RtMessage(invalidOffsetsDecreasing);
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (TagOffsetOverflowException e) {
+      assertThat(e.getMessage(), containsString("offset 1 precedes previous offset"));
+    }
+  }
+
+  @Test
+  public void offsetPastEndOfValuesThrowsException() {
+    ByteBuf invalidOffsetIsPastEndOfValues = makeBuf(
+        (byte) 0x02, (byte) 0x00, (byte) 0x00, (byte) 0x00, // 2 tags
+        (byte) 0x08, (byte) 0x00, (byte) 0x00, (byte) 0x00, // *invalid* offset 8
+        (byte) 'D', (byte) 'E', (byte) 'L', (byte) 'E',     // DELE
+        (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',     // INDX
+        (byte) 0x50, (byte) 0x50, (byte) 0x50, (byte) 0x50  // only 4 bytes of values
+    );
+
+    try {
+      //noinspection unused
+      RtMessage unused = new RtMessage(invalidOffsetIsPastEndOfValues);
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (TagOffsetOverflowException e) {
+      assertThat(e.getMessage(), containsString("offset 0 overflow"));
+    }
+  }
+
+  @Test
+  public void viewReadsValuesFromSourceBuffer() {
+    ByteBuf validThreeTags = makeBuf(
+        (byte) 0x03, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // 3 tags
+        (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #2 has offset 4
+        (byte) 0x0c, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #3 has offset 12
+        (byte) 'D', (byte) 'E', (byte) 'L', (byte) 'E',   // DELE
+        (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX
+        (byte) 'P', (byte) 'A', (byte) 'D', (byte) 0xff,  // PAD
+        (byte) 0x11, (byte) 0x11, (byte) 0x11, (byte) 0x11,  // data for DELE
+        (byte) 0x22, (byte) 0x22, (byte) 0x22, (byte) 0x22,  // data for INDX
+        (byte) 0x23, (byte) 0x23, (byte) 0x23, (byte) 0x23,  // data for INDX
+        (byte) 0x33, (byte) 0x33, (byte) 0x33, (byte) 0x33   // data for PAD
+    );
+
+    try (RtMessage view = RtMessage.view(validThreeTags)) {
+      assertTrue(view.isView());
+      assertThat(view.numTags(), equalTo(3));
+      assertThat(view.get(RtTag.CERT), equalTo(null));
+      assertThat(view.slice(RtTag.CERT), equalTo(null));
+      assertArrayEquals(
+          view.get(RtTag.INDX),
+          new byte[]{0x22, 0x22, 0x22, 0x22, 0x23, 0x23, 0x23, 0x23}
+      );
+      assertArrayEquals(view.get(RtTag.PAD), new byte[]{0x33, 0x33, 0x33, 0x33});
+
+      // Slice shares the source's memory
+      ByteBuf deleSlice = view.slice(RtTag.DELE);
+      assertThat(deleSlice.readableBytes(), equalTo(4));
+      validThreeTags.setByte(24, 0x44);
+      assertThat(deleSlice.getByte(0), equalTo((byte) 0x44));
+
+      assertArrayEquals(
+          view.mapping().keySet().toArray(), new RtTag[]{RtTag.DELE, RtTag.INDX, RtTag.PAD}
+      );
+    }
+  }
+
+  @Test
+  public void viewRetainsAndReleasesSourceBuffer() {
+    ByteBuf validSingleTag = makeBuf(
+        (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00, // 1 tag
+        (byte) 'C', (byte) 'E', (byte) 'R', (byte) 'T',  // CERT tag
+        (byte) 0x50, (byte) 0x50, (byte) 0x50, (byte) 0x50  // value 0x50505050
+    );
+
+    RtMessage view = RtMessage.view(validSingleTag);
+    assertThat(validSingleTag.refCnt(), equalTo(2));
+    assertThat(validSingleTag.readerIndex(), equalTo(0));
+
+    view.close();
+    assertThat(validSingleTag.refCnt(), equalTo(1));
+
+    // Closing again has no effect
+    view.close();
+    assertThat(validSingleTag.refCnt(), equalTo(1));
+  }
+
+  @Test
+  public void readingClosedViewThrowsException() {
+    ByteBuf validSingleTag = makeBuf(
+        (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00, // 1 tag
+        (byte) 'C', (byte) 'E', (byte) 'R', (byte) 'T',  // CERT tag
+        (byte) 0x50, (byte) 0x50, (byte) 0x50, (byte) 0x50  // value 0x50505050
+    );
+
+    RtMessage view = RtMessage.view(validSingleTag);
+    view.close();
+
+    // Presence is answered from the offsets table, but values are no longer readable
+    assertTrue(view.contains(RtTag.CERT));
+    assertClosed(() -> view.get(RtTag.CERT));
+    assertClosed(() -> view.getUInt32LE(RtTag.CERT));
+    assertClosed(() -> view.copyTo(RtTag.CERT, new byte[4], 0));
+    assertClosed(() -> view.nioBuffer(RtTag.CERT));
+    assertClosed(() -> view.slice(RtTag.CERT));
+    assertClosed(() -> view.get(RtTag.CERT, RtTag.DELE));
+  }
+
+  private static void assertClosed(Runnable read) {
+    try {
+      read.run();
+      fail("expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), containsString("closed"));
+    }
+  }
+
+  @Test
+  public void invalidViewReleasesSourceBuffer() {
+    ByteBuf invalidNotMultipleOf4 = makeBuf(
+        (byte) 0x00,                                        // misalign
+        (byte) 0x01, (byte) 0x00, (byte) 0x00, (byte) 0x00  // one tag
+    );
+
+    try {
+      //noinspection unused
+      RtMessage unused = RtMessage.view(invalidNotMultipleOf4);
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (MessageUnalignedException e) {
+      assertThat(invalidNotMultipleOf4.refCnt(), equalTo(1));
+    }
+  }
+
+  @Test
+  public void duplicateTagsThrowsException() {
+    ByteBuf invalidDuplicateTags = makeBuf(
+        (byte) 0x02, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // 2 tags
+        (byte) 0x04, (byte) 0x00, (byte) 0x00, (byte) 0x00,  // tag #2 has offset 4
+        (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX
+        (byte) 'I', (byte) 'N', (byte) 'D', (byte) 'X',   // INDX *repeated*
+        (byte) 0x50, (byte) 0x50, (byte) 0x50, (byte) 0x50,  // value 0x50505050
+        (byte) 0x60, (byte) 0x60, (byte) 0x60, (byte) 0x60   // value 0x60606060
+    );
+
+    try {
+      //noinspection unused
+      RtMessage unused = new RtMessage(invalidDuplicateTags);
+      fail("expected an InvalidRoughTimeMessage exception");
+
+    } catch (TagsNotIncreasingException e) {
+      assertThat(e.getMessage(), containsString("not strictly increasing"));
+    }
+  }
+
   @Test
   public void invalidTagThrowsException() {
     try {
@@ -263,6 +474,243 @@ public final class RtMessageTest {
     }
   }
 
+  @Test
+  public void typedAccessorsReadEagerAndViewMessages() {
+    byte[] midp = new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, (byte) 0x88};
+    byte[] radi = new byte[]{0x10, 0x20, 0x30, (byte) 0xc0};
+    byte[] root = new byte[]{0x55, 0x66, 0x77, 0x00};
+
+    RtMessage eager = RtMessage.builder()
+        .add(RtTag.MIDP, midp)
+        .add(RtTag.RADI, radi)
+        .add(RtTag.ROOT, root)
+        .build();
+
+    ByteBuf encoded = RtWire.toWire(eager);
+    try (RtMessage view = RtMessage.view(encoded)) {
+      for (RtMessage msg : new RtMessage[]{eager, view}) {
+        assertThat(msg.getUInt64LE(RtTag.MIDP), equalTo(0x8807060504030201L));
+        assertThat(msg.getUInt32LE(RtTag.RADI), equalTo(0xc0302010));
+
+        byte[] dst = new byte[6];
+        assertThat(msg.copyTo(RtTag.ROOT, dst, 2), equalTo(4));
+        assertArrayEquals(dst, new byte[]{0x00, 0x00, 0x55, 0x66, 0x77, 0x00});
+      }
+    } finally {
+      encoded.release();
+    }
+  }
+
+  @Test
+  public void pathAccessorsReadNestedValuesInPlace() {
+    byte[] pubk = new byte[32];
+    pubk[31] = 0x7f;
+
+    RtMessage dele = RtMessage.builder()
+        .add(RtTag.PUBK, pubk)
+        .add(RtTag.MINT, new byte[]{0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00})
+        .add(RtTag.MAXT, new byte[]{0x02, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0x80})
+        .build();
+    RtMessage cert = RtMessage.builder()
+        .add(RtTag.DELE, dele)
+        .add(RtTag.SIG, new byte[64])
+        .build();
+    RtMessage eager = RtMessage.builder()
+        .add(RtTag.CERT, cert)
+        .add(RtTag.INDX, new byte[]{0x05, 0x00, 0x00, 0x00})
+        .build();
+
+    try (RtMessage view = RtMessage.view(ByteBuffer.wrap(RtWire.toBytes(eager)))) {
+      for (RtMessage msg : new RtMessage[]{eager, view}) {
+        assertArrayEquals(msg.get(RtTag.CERT, RtTag.DELE, RtTag.PUBK), pubk);
+        assertArrayEquals(msg.get(RtTag.CERT, RtTag.DELE), RtWire.toBytes(dele));
+        assertThat(msg.getUInt64LE(RtTag.CERT, RtTag.DELE, RtTag.MINT), equalTo(1L));
+        assertThat(
+            msg.getUInt64LE(RtTag.CERT, RtTag.DELE, RtTag.MAXT), equalTo(0x8000000000000002L)
+        );
+        assertThat(msg.nioBuffer(RtTag.CERT, RtTag.SIG).remaining(), equalTo(64));
+        assertThat(msg.getUInt32LE(new RtTag[]{RtTag.INDX}), equalTo(5));
+
+        assertThat(msg.get(RtTag.CERT, RtTag.DELE, RtTag.ROOT), equalTo(null));
+        assertThat(msg.nioBuffer(RtTag.SREP, RtTag.ROOT), equalTo(null));
+      }
+    }
+  }
+
+  @Test
+  public void pathAccessorsValidateEnclosingMessages() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.CERT, new byte[]{0x01, 0x00, 0x00, 0x00, 'S', 'I', 'G', 0x00, 0x01})
+        .build();
+
+    try {
+      msg.get(RtTag.CERT, RtTag.SIG);
+      fail("expected a MessageUnalignedException");
+    } catch (MessageUnalignedException e) {
+      assertThat(e.getMessage(), containsString("not multiple of 4"));
+    }
+
+    try {
+      msg.getUInt32LE(RtTag.SREP, RtTag.RADI);
+      fail("expected a MissingTagException");
+    } catch (MissingTagException e) {
+      assertThat(e.getMessage(), containsString("[SREP, RADI]"));
+    }
+  }
+
+  @Test
+  public void equalityIsStructural() {
+    RtMessage eager = RtMessage.builder()
+        .add(RtTag.MIDP, new byte[8])
+        .add(RtTag.RADI, new byte[]{0x01, 0x00, 0x00, 0x00})
+        .build();
+    RtMessage same = RtMessage.builder()
+        .add(RtTag.RADI, new byte[]{0x01, 0x00, 0x00, 0x00})
+        .add(RtTag.MIDP, new byte[8])
+        .build();
+    RtMessage different = RtMessage.builder()
+        .add(RtTag.MIDP, new byte[8])
+        .add(RtTag.RADI, new byte[]{0x02, 0x00, 0x00, 0x00})
+        .build();
+
+    try (RtMessage view = RtMessage.view(ByteBuffer.wrap(RtWire.toBytes(eager)))) {
+      assertThat(eager, equalTo(same));
+      assertThat(eager, equalTo(view));
+      assertThat(view, equalTo(eager));
+      assertThat(eager.hashCode(), equalTo(view.hashCode()));
+      assertThat(eager.hashCode(), equalTo(same.hashCode()));
+      assertFalse(eager.equals(different));
+      assertFalse(eager.equals(null));
+
+      Set<RtMessage> unique = new HashSet<>(Arrays.asList(eager, same, view, different));
+      assertThat(unique.size(), equalTo(2));
+    }
+  }
+
+  @Test
+  public void viewsParseRegionsOfMappedFileInPlace() throws IOException {
+    RtMessage first = RtMessage.builder()
+        .add(RtTag.MIDP, new byte[]{0x01, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00})
+        .add(RtTag.RADI, new byte[4])
+        .build();
+    RtMessage second = RtMessage.builder()
+        .add(RtTag.CERT, first)
+        .add(RtTag.SIG, new byte[64])
+        .build();
+    byte[] firstBytes = RtWire.toBytes(first);
+    byte[] secondBytes = RtWire.toBytes(second);
+
+    File archive = tmp.newFile();
+    try (FileOutputStream out = new FileOutputStream(archive)) {
+      out.write(firstBytes);
+      out.write(secondBytes);
+    }
+
+    try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+      try (RtMessage view1 = RtMessage.view(mapped, 0, firstBytes.length, false);
+          RtMessage view2 = RtMessage.view(mapped, firstBytes.length, secondBytes.length, false)) {
+        assertThat(view1, equalTo(first));
+        assertThat(view2, equalTo(second));
+        assertThat(view2.getUInt64LE(RtTag.CERT, RtTag.MIDP), equalTo(1L));
+      }
+
+      RtMessageReader reader = new RtMessageReader();
+      reader.reset(mapped, firstBytes.length, secondBytes.length);
+      assertThat(reader.numTags(), equalTo(2));
+      assertThat(reader.valueLength(reader.indexOf(RtTag.SIG)), equalTo(64));
+      assertThat(mapped.position(), equalTo(0));
+      assertThat(mapped.limit(), equalTo(firstBytes.length + secondBytes.length));
+    }
+  }
+
+  @Test
+  public void typedAccessorsValidatePresenceAndLength() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.MIDP, new byte[4])
+        .add(RtTag.RADI, new byte[8])
+        .build();
+
+    try {
+      msg.getUInt64LE(RtTag.MINT);
+      fail("expected a MissingTagException");
+    } catch (MissingTagException e) {
+      assertThat(e.getMessage(), containsString("MINT"));
+    }
+
+    try {
+      msg.getUInt64LE(RtTag.MIDP);
+      fail("expected an InvalidValueLengthException");
+    } catch (InvalidValueLengthException e) {
+      assertThat(e.getMessage(), containsString("length 4"));
+    }
+
+    try {
+      msg.getUInt32LE(RtTag.RADI);
+      fail("expected an InvalidValueLengthException");
+    } catch (InvalidValueLengthException e) {
+      assertThat(e.getMessage(), containsString("length 8"));
+    }
+
+    try {
+      msg.copyTo(RtTag.RADI, new byte[8], 1);
+      fail("expected an IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage(), containsString("does not fit"));
+    }
+  }
+
+  @Test
+  public void parsingDoesNotLeakPooledBuffersUnderParanoidLeakDetection() {
+    ResourceLeakDetector.Level priorLevel = ResourceLeakDetector.getLevel();
+    ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+
+    try {
+      ByteBuf encoded = RtWire.toWire(
+          RtMessage.builder().add(RtTag.NONC, new byte[64]).addPadding(true).build()
+      );
+      byte[] bytes = new byte[encoded.readableBytes()];
+      encoded.getBytes(encoded.readerIndex(), bytes);
+
+      ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+      direct.order(ByteOrder.LITTLE_ENDIAN);
+      long activeBefore = activePooledAllocations();
+
+      for (int i = 0; i < 1000; i++) {
+        assertThat(RtMessage.fromBytes(bytes).numTags(), equalTo(2));
+
+        direct.clear();
+        direct.put(bytes).flip();
+        assertThat(RtMessage.fromByteBuffer(direct).numTags(), equalTo(2));
+        assertThat(direct.remaining(), equalTo(0));
+
+        try (RtMessage view = RtMessage.view(encoded)) {
+          assertThat(view.numTags(), equalTo(2));
+        }
+      }
+
+      assertThat(activePooledAllocations(), equalTo(activeBefore));
+      assertThat(encoded.refCnt(), equalTo(1));
+      assertTrue(encoded.release());
+
+    } finally {
+      ResourceLeakDetector.setLevel(priorLevel);
+    }
+  }
+
+  private static long activePooledAllocations() {
+    PooledByteBufAllocatorMetric metric = PooledByteBufAllocator.DEFAULT.metric();
+    long active = 0;
+    for (PoolArenaMetric arena : metric.heapArenas()) {
+      active += arena.numActiveAllocations();
+    }
+    for (PoolArenaMetric arena : metric.directArenas()) {
+      active += arena.numActiveAllocations();
+    }
+    return active;
+  }
+
   private static ByteBuf makeBuf(byte... bytes) {
     return Unpooled.copiedBuffer(bytes);
   }
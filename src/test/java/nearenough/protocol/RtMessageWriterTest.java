@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import org.junit.Test;
+
+public final class RtMessageWriterTest {
+
+  private static byte[] filled(int length, int fill) {
+    byte[] value = new byte[length];
+    Arrays.fill(value, (byte) fill);
+    return value;
+  }
+
+  @Test
+  public void writesSameBytesAsBuilder() {
+    byte[] indx = filled(4, 0x11);
+    byte[] maxt = filled(8, 0x22);
+    byte[] nonc = filled(64, 0x33);
+
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, indx)
+        .add(RtTag.MAXT, maxt)
+        .add(RtTag.NONC, nonc)
+        .build();
+    ByteBuf expected = RtWire.toWire(msg);
+
+    ByteBuf out = Unpooled.buffer();
+    int length = new RtMessageWriter(out, 3)
+        .put(RtTag.NONC, nonc)
+        .put(RtTag.MAXT, Unpooled.wrappedBuffer(maxt))
+        .put(RtTag.INDX, indx)
+        .finish();
+
+    assertThat(length, equalTo(expected.readableBytes()));
+    assertThat(out, equalTo(expected));
+    expected.release();
+  }
+
+  @Test
+  public void writesEmptyAndSingleTagMessages() {
+    ByteBuf out = Unpooled.buffer();
+
+    assertThat(new RtMessageWriter(out, 0).finish(), equalTo(4));
+    assertThat(new RtMessageWriter(out, 1).put(RtTag.PAD, new byte[4]).finish(), equalTo(12));
+
+    assertThat(new RtMessage(out.readSlice(4)).numTags(), equalTo(0));
+    assertThat(new RtMessage(out).get(RtTag.PAD).length, equalTo(4));
+  }
+
+  @Test
+  public void nestedMessagesAreWrittenInPlace() {
+    byte[] pubk = filled(32, 0x44);
+    byte[] mint = filled(8, 0x55);
+    byte[] maxt = filled(8, 0x66);
+    byte[] sig = filled(64, 0x77);
+
+    RtMessage dele = RtMessage.builder()
+        .add(RtTag.PUBK, pubk)
+        .add(RtTag.MINT, mint)
+        .add(RtTag.MAXT, maxt)
+        .build();
+    RtMessage cert = RtMessage.builder().add(RtTag.DELE, dele).add(RtTag.SIG, sig).build();
+    ByteBuf expected = RtWire.toWire(
+        RtMessage.builder().add(RtTag.CERT, cert).add(RtTag.INDX, new byte[4]).build()
+    );
+
+    ByteBuf out = Unpooled.buffer();
+    RtMessageWriter response = new RtMessageWriter(out, 2);
+    RtMessageWriter certWriter = response.nested(RtTag.CERT, 2);
+    certWriter.put(RtTag.SIG, sig);
+    certWriter.nested(RtTag.DELE, 3)
+        .put(RtTag.PUBK, pubk)
+        .put(RtTag.MINT, mint)
+        .put(RtTag.MAXT, maxt)
+        .finish();
+    certWriter.finish();
+    response.put(RtTag.INDX, new byte[4]).finish();
+
+    assertThat(out, equalTo(expected));
+    expected.release();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tagsOutOfOrderThrowsException() {
+    new RtMessageWriter(Unpooled.buffer(), 2)
+        .put(RtTag.INDX, new byte[4])
+        .put(RtTag.NONC, new byte[4]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unalignedValueThrowsException() {
+    new RtMessageWriter(Unpooled.buffer(), 1).put(RtTag.NONC, new byte[3]);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void finishingWithMissingTagsThrowsException() {
+    new RtMessageWriter(Unpooled.buffer(), 2).put(RtTag.NONC, new byte[4]).finish();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void writingWhileNestedMessageOpenThrowsException() {
+    RtMessageWriter writer = new RtMessageWriter(Unpooled.buffer(), 2);
+    writer.nested(RtTag.CERT, 1);
+    writer.put(RtTag.INDX, new byte[4]);
+  }
+}
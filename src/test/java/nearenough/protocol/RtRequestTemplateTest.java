@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static nearenough.protocol.RtConstants.MIN_REQUEST_LENGTH;
+import static nearenough.protocol.RtConstants.NONCE_LENGTH;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+public final class RtRequestTemplateTest {
+
+  private static final RtRequestTemplate TEMPLATE = new RtRequestTemplate();
+
+  private static byte[] nonce(int fill) {
+    byte[] nonce = new byte[NONCE_LENGTH];
+    Arrays.fill(nonce, (byte) fill);
+    return nonce;
+  }
+
+  private static byte[] encodeWithBuilder(byte[] nonce) {
+    RtMessage request = RtMessage.builder()
+        .addPadding(true)
+        .add(RtTag.NONC, nonce)
+        .build();
+
+    byte[] bytes = new byte[RtWire.encodedSize(request)];
+    RtWire.writeTo(request, ByteBuffer.wrap(bytes));
+    return bytes;
+  }
+
+  @Test
+  public void templateIsMinimumRequestLength() {
+    assertThat(TEMPLATE.length(), equalTo(MIN_REQUEST_LENGTH));
+  }
+
+  @Test
+  public void writtenRequestsMatchBuiltRequests() {
+    byte[] nonce = nonce(0x5a);
+    byte[] expected = encodeWithBuilder(nonce);
+
+    ByteBuf buf = Unpooled.buffer();
+    buf.writeInt(0xcafebabe);
+    assertThat(TEMPLATE.writeTo(nonce, buf), equalTo(expected.length));
+    assertThat(buf.readInt(), equalTo(0xcafebabe));
+    assertThat(buf, equalTo(Unpooled.wrappedBuffer(expected)));
+
+    ByteBuffer nioBuf = ByteBuffer.allocateDirect(expected.length);
+    assertThat(TEMPLATE.writeTo(nonce, nioBuf), equalTo(expected.length));
+    assertThat(nioBuf.remaining(), equalTo(0));
+
+    byte[] written = new byte[expected.length];
+    nioBuf.flip();
+    nioBuf.get(written);
+    assertArrayEquals(expected, written);
+  }
+
+  @Test
+  public void patchingReplacesOnlyTheNonce() {
+    byte[] expected = encodeWithBuilder(nonce(0x22));
+
+    ByteBuf buf = Unpooled.buffer();
+    buf.writeLong(0);
+    TEMPLATE.writeTo(nonce(0x11), buf);
+    TEMPLATE.patchNonce(nonce(0x22), buf, 8);
+    assertThat(buf.readerIndex(), equalTo(0));
+    assertThat(buf.slice(8, expected.length), equalTo(Unpooled.wrappedBuffer(expected)));
+
+    ByteBuffer nioBuf = ByteBuffer.allocate(expected.length);
+    TEMPLATE.writeTo(nonce(0x11), nioBuf);
+    TEMPLATE.patchNonce(nonce(0x22), nioBuf, 0);
+    assertThat(nioBuf.position(), equalTo(expected.length));
+    assertArrayEquals(expected, nioBuf.array());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongLengthNonceThrowsException() {
+    TEMPLATE.writeTo(new byte[NONCE_LENGTH - 1], Unpooled.buffer());
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.protocol;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public final class RtValidatorTest {
+
+  private static byte[] nestedMessage() {
+    RtMessage dele = RtMessage.builder()
+        .add(RtTag.PUBK, new byte[32])
+        .add(RtTag.MINT, new byte[8])
+        .add(RtTag.MAXT, new byte[8])
+        .build();
+    RtMessage cert = RtMessage.builder()
+        .add(RtTag.DELE, dele)
+        .add(RtTag.SIG, new byte[64])
+        .build();
+    RtMessage response = RtMessage.builder()
+        .add(RtTag.CERT, cert)
+        .add(RtTag.INDX, new byte[4])
+        .build();
+
+    ByteBuf encoded = RtWire.toWire(response);
+    byte[] bytes = new byte[encoded.readableBytes()];
+    encoded.readBytes(bytes);
+    encoded.release();
+    return bytes;
+  }
+
+  @Test
+  public void wellFormedMessagesAreOk() {
+    byte[] bytes = nestedMessage();
+
+    assertThat(RtValidator.validate(Unpooled.wrappedBuffer(bytes)), equalTo(RtStatus.OK));
+    assertThat(RtValidator.validate(ByteBuffer.wrap(bytes)), equalTo(RtStatus.OK));
+    assertThat(RtValidator.validate(ByteBuffer.wrap(new byte[4])), equalTo(RtStatus.OK));
+  }
+
+  @Test
+  public void byteBufferStateIsUntouched() {
+    byte[] bytes = nestedMessage();
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 8);
+    direct.order(ByteOrder.LITTLE_ENDIAN);
+    direct.position(8);
+    direct.put(bytes);
+    direct.position(8);
+
+    assertThat(RtValidator.validate(direct), equalTo(RtStatus.OK));
+    assertThat(direct.position(), equalTo(8));
+    assertThat(direct.limit(), equalTo(bytes.length + 8));
+    assertThat(direct.order(), equalTo(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  @Test
+  public void structuralErrorsAreReported() {
+    assertThat(validate(0x01), equalTo(RtStatus.MESSAGE_TOO_SHORT));
+    assertThat(validate(0x00, 0x01, 0x00, 0x00, 0x00), equalTo(RtStatus.MESSAGE_UNALIGNED));
+    assertThat(validate(0xff, 0xff, 0xff, 0xef), equalTo(RtStatus.INVALID_NUM_TAGS));
+    assertThat(
+        validate(0x02, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00),
+        equalTo(RtStatus.MESSAGE_TOO_SHORT)
+    );
+    assertThat(
+        validate(
+            0x02, 0x00, 0x00, 0x00, 0x07, 0x00, 0x00, 0x00,
+            'D', 'E', 'L', 'E', 'I', 'N', 'D', 'X',
+            0x50, 0x50, 0x50, 0x50, 0x60, 0x60, 0x60, 0x60
+        ),
+        equalTo(RtStatus.TAG_OFFSET_UNALIGNED)
+    );
+    assertThat(
+        validate(
+            0x02, 0x00, 0x00, 0x00, 0x08, 0x00, 0x00, 0x00,
+            'D', 'E', 'L', 'E', 'I', 'N', 'D', 'X',
+            0x50, 0x50, 0x50, 0x50
+        ),
+        equalTo(RtStatus.TAG_OFFSET_OVERFLOW)
+    );
+    assertThat(
+        validate(
+            0x02, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00,
+            'D', 'E', 'L', 'X', 'I', 'N', 'D', 'X',
+            0x50, 0x50, 0x50, 0x50, 0x60, 0x60, 0x60, 0x60
+        ),
+        equalTo(RtStatus.INVALID_TAG)
+    );
+    assertThat(
+        validate(
+            0x02, 0x00, 0x00, 0x00, 0x04, 0x00, 0x00, 0x00,
+            'I', 'N', 'D', 'X', 'I', 'N', 'D', 'X',
+            0x50, 0x50, 0x50, 0x50, 0x60, 0x60, 0x60, 0x60
+        ),
+        equalTo(RtStatus.TAGS_NOT_INCREASING)
+    );
+  }
+
+  @Test
+  public void errorsInNestedMessagesAreReported() {
+    byte[] bytes = nestedMessage();
+
+    // Locate the DELE tag inside the nested CERT and corrupt it
+    int deleTagIdx = indexOf(bytes, new byte[]{'D', 'E', 'L', 'E'});
+    bytes[deleTagIdx + 3] = 'X';
+
+    assertThat(RtValidator.validate(ByteBuffer.wrap(bytes)), equalTo(RtStatus.INVALID_TAG));
+  }
+
+  @Test
+  public void excessiveNestingIsRejected() {
+    RtMessage msg = RtMessage.builder().add(RtTag.INDX, new byte[4]).build();
+    for (int i = 0; i <= RtValidator.MAX_NESTING_DEPTH; i++) {
+      msg = RtMessage.builder().add(RtTag.CERT, msg).build();
+    }
+
+    ByteBuf encoded = RtWire.toWire(msg);
+    assertThat(RtValidator.validate(encoded), equalTo(RtStatus.NESTING_TOO_DEEP));
+    encoded.release();
+  }
+
+  private static RtStatus validate(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return RtValidator.validate(Unpooled.wrappedBuffer(bytes));
+  }
+
+  private static int indexOf(byte[] haystack, byte[] needle) {
+    outer:
+    for (int i = 0; i <= haystack.length - needle.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+}
@@ -18,8 +18,15 @@ package nearenough.protocol;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -142,4 +149,158 @@ public final class RtWireTest {
     // Message was completely read
     assertThat(onWire.readableBytes(), equalTo(0));
   }
+
+  @Test
+  public void writeToByteBufAppendsAtWriterIndex() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.MAXT, new byte[]{5, 6, 7, 8, 9, 10, 11, 12})
+        .build();
+
+    ByteBuf expected = RtWire.toWire(msg);
+    ByteBuf out = Unpooled.buffer(8);
+    out.writeLong(0x1122334455667788L);
+
+    int written = RtWire.writeTo(msg, out);
+
+    assertThat(written, equalTo(RtWire.encodedSize(msg)));
+    assertThat(out.readLong(), equalTo(0x1122334455667788L));
+    assertThat(out, equalTo(expected));
+
+    expected.release();
+    out.release();
+  }
+
+  @Test
+  public void writeToByteBufferMatchesToWire() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.MAXT, new byte[]{5, 6, 7, 8, 9, 10, 11, 12})
+        .build();
+
+    ByteBuf expected = RtWire.toWire(msg);
+    byte[] expectedBytes = new byte[expected.readableBytes()];
+    expected.getBytes(expected.readerIndex(), expectedBytes);
+
+    try (RtMessage view = RtMessage.view(expected)) {
+      for (RtMessage source : new RtMessage[]{msg, view}) {
+        ByteBuffer out = ByteBuffer.allocateDirect(expectedBytes.length + 4);
+        out.position(4);
+
+        int written = RtWire.writeTo(source, out);
+
+        assertThat(written, equalTo(expectedBytes.length));
+        assertThat(out.position(), equalTo(4 + expectedBytes.length));
+        assertThat(out.order(), equalTo(ByteOrder.BIG_ENDIAN));
+
+        byte[] actualBytes = new byte[expectedBytes.length];
+        out.position(4);
+        out.get(actualBytes);
+        assertArrayEquals(expectedBytes, actualBytes);
+      }
+    } finally {
+      expected.release();
+    }
+  }
+
+  @Test
+  public void memoizedEncodingIsCopiedNotShared() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{0x01, 0x02, 0x03, 0x04})
+        .add(RtTag.NONC, new byte[64])
+        .build();
+
+    byte[] first = RtWire.toBytes(msg);
+    first[0] = 0x7f;
+    byte[] second = RtWire.toBytes(msg);
+
+    assertThat(second[0], equalTo((byte) 0x02));
+    assertThat(RtWire.encodedSize(msg), equalTo(second.length));
+
+    ByteBuf buf = Unpooled.buffer(4).writeZero(4);
+    assertThat(RtWire.writeTo(msg, buf), equalTo(second.length));
+    byte[] written = new byte[second.length];
+    buf.getBytes(4, written);
+    assertArrayEquals(written, second);
+    buf.release();
+
+    ByteBuffer nio = ByteBuffer.allocate(second.length);
+    RtWire.writeTo(msg, nio);
+    assertArrayEquals(nio.array(), second);
+  }
+
+  @Test
+  public void writeToByteBufferWithoutRoomThrowsException() {
+    RtMessage msg = RtMessage.builder().add(RtTag.INDX, new byte[4]).build();
+    ByteBuffer out = ByteBuffer.allocate(RtWire.encodedSize(msg) - 1);
+
+    try {
+      RtWire.writeTo(msg, out);
+      fail("expected a BufferOverflowException");
+    } catch (BufferOverflowException e) {
+      assertThat(out.position(), equalTo(0));
+    }
+  }
+
+  @Test
+  public void compositeEncodingMatchesToWire() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.NONC, new byte[64])
+        .addPadding(true)
+        .build();
+
+    ByteBuf expected = RtWire.toWire(msg);
+    CompositeByteBuf composite = RtWire.toWireComposite(msg);
+
+    assertThat(composite.numComponents(), equalTo(1 + msg.numTags()));
+    assertThat(composite, equalTo(expected));
+
+    composite.release();
+    expected.release();
+  }
+
+  @Test
+  public void compositeEncodingOfViewRetainsSource() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.MAXT, new byte[]{5, 6, 7, 8, 9, 10, 11, 12})
+        .build();
+    ByteBuf source = RtWire.toWire(msg);
+
+    CompositeByteBuf composite;
+    try (RtMessage view = RtMessage.view(source)) {
+      composite = RtWire.toWireComposite(view);
+    }
+
+    // Closing the view must not have released the slices held by the composite
+    assertTrue(source.refCnt() > 1);
+    assertThat(composite, equalTo(source));
+
+    composite.release();
+    assertThat(source.refCnt(), equalTo(1));
+    source.release();
+  }
+
+  @Test
+  public void nioBuffersConcatenateToWireEncoding() {
+    RtMessage msg = RtMessage.builder()
+        .add(RtTag.INDX, new byte[]{1, 2, 3, 4})
+        .add(RtTag.NONC, new byte[64])
+        .addPadding(true)
+        .build();
+
+    ByteBuf expected = RtWire.toWire(msg);
+
+    try (RtMessage view = RtMessage.view(expected)) {
+      for (RtMessage source : new RtMessage[]{msg, view}) {
+        ByteBuffer[] buffers = RtWire.toNioBuffers(source);
+        assertThat(buffers.length, equalTo(1 + msg.numTags()));
+        assertTrue(buffers[buffers.length - 1].isReadOnly());
+        assertThat(Unpooled.wrappedBuffer(buffers), equalTo(expected));
+      }
+    } finally {
+      expected.release();
+    }
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 int08h LLC. All rights reserved.
+ *
+ * int08h LLC licenses Nearenough (the "Software") to you under the Apache License, version 2.0
+ * (the "License"); you may not use this Software except in compliance with the License. You may
+ * obtain a copy of the License from the LICENSE file included with the Software or at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nearenough.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public final class BytesUtilTest {
+
+  private static final byte[] BYTES = {
+      0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, (byte) 0x88, (byte) 0xff, (byte) 0xfe
+  };
+
+  @Test
+  public void arrayAccessorsUseTheirByteOrderAtAnyOffset() {
+    assertThat(BytesUtil.getInt(BYTES, 6), equalTo(0x0788fffe));
+    assertThat(BytesUtil.getIntLE(BYTES, 6), equalTo(0xfeff8807));
+    assertThat(BytesUtil.getLong(BYTES, 1), equalTo(0x02030405060788ffL));
+    assertThat(BytesUtil.getLongLE(BYTES, 2), equalTo(0xfeff880706050403L));
+
+    byte[] written = new byte[13];
+    BytesUtil.setInt(written, 1, 0x0788fffe);
+    BytesUtil.setLongLE(written, 5, 0xfeff880706050403L);
+    assertThat(BytesUtil.getIntLE(written, 1), equalTo(0xfeff8807));
+    assertThat(BytesUtil.getLong(written, 5), equalTo(0x030405060788fffeL));
+
+    BytesUtil.setIntLE(written, 0, 0x04030201);
+    BytesUtil.setLong(written, 4, 0x05060788fffe0102L);
+    assertArrayEquals(
+        written,
+        new byte[]{1, 2, 3, 4, 5, 6, 7, (byte) 0x88, (byte) 0xff, (byte) 0xfe, 1, 2, (byte) 0xfe}
+    );
+  }
+
+  @Test
+  public void byteBufferReadsMatchArrayReadsInEitherOrder() {
+    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      ByteBuffer direct = ByteBuffer.allocateDirect(BYTES.length).order(order);
+      direct.put(BYTES).position(1);
+
+      for (int i = 0; i <= BYTES.length - 8; i++) {
+        assertThat(BytesUtil.getLongLE(direct, i), equalTo(BytesUtil.getLongLE(BYTES, i)));
+      }
+      for (int i = 0; i <= BYTES.length - 4; i++) {
+        assertThat(BytesUtil.getIntLE(direct, i), equalTo(BytesUtil.getIntLE(BYTES, i)));
+        assertThat(BytesUtil.getInt(direct, i), equalTo(BytesUtil.getInt(BYTES, i)));
+      }
+      assertThat(BytesUtil.getUnsignedIntLE(direct, 6), equalTo(0xfeff8807L));
+      assertThat(direct.position(), equalTo(1));
+      assertThat(direct.order(), equalTo(order));
+    }
+  }
+
+  @Test
+  public void byteBufferWritesMatchArrayWrites() {
+    byte[] expected = new byte[16];
+    BytesUtil.setIntLE(expected, 1, 0xc0302010);
+    BytesUtil.setLongLE(expected, 8, 0x8807060504030201L);
+
+    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      ByteBuffer heap = ByteBuffer.allocate(16).order(order);
+      BytesUtil.setIntLE(heap, 1, 0xc0302010);
+      BytesUtil.setLongLE(heap, 8, 0x8807060504030201L);
+      assertArrayEquals(heap.array(), expected);
+    }
+  }
+
+  @Test
+  public void bulkCopiesUseAbsoluteIndices() {
+    ByteBuffer direct = ByteBuffer.allocateDirect(16);
+    direct.position(12);
+
+    BytesUtil.putBytes(direct, 3, BYTES, 2, 5);
+    byte[] copied = new byte[7];
+    BytesUtil.getBytes(direct, 2, copied, 1, 6);
+
+    assertArrayEquals(copied, new byte[]{0x00, 0x00, 0x03, 0x04, 0x05, 0x06, 0x07});
+    assertThat(direct.position(), equalTo(12));
+  }
+}